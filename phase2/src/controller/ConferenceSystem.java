@@ -38,10 +38,12 @@ public class ConferenceSystem {
      * @return Return true if the Attendee is created successfully, false otherwise.
      */
     public boolean createAttendee(String userName, String password){
-        if (um.isExistingOrganizer(user, gw)){
-            return signup(userName, password);
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            if (um.isExistingOrganizer(user, gw)){
+                return signup(userName, password);
+            }
+            return false;
+        });
     }
 
     /**
@@ -54,11 +56,13 @@ public class ConferenceSystem {
      *          or when the user name is not unique.
      */
     public boolean createSpeaker(String userName, String password){
-        if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
-            um.createSpeaker(password.trim(), userName.trim(), gw);
-            return true;
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
+                um.createSpeaker(password.trim(), userName.trim(), gw);
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -71,11 +75,13 @@ public class ConferenceSystem {
      *          or when the user name is not unique.
      */
     public boolean createOrganizer(String userName, String password){
-        if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
-            um.createOrganizer(password.trim(), userName.trim(), gw);
-            return true;
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
+                um.createOrganizer(password.trim(), userName.trim(), gw);
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -86,11 +92,13 @@ public class ConferenceSystem {
      * @return Return true if the VIP is created successfully, false otherwise.
      */
     public boolean createVipUser(String userName, String password){
-        if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
-            um.createVIP(password.trim(), userName.trim(), gw);
-            return true;
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            if (checkValidPassword(password) && um.canCreateUser(userName, gw) && um.isExistingOrganizer(user, gw)){
+                um.createVIP(password.trim(), userName.trim(), gw);
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -101,11 +109,13 @@ public class ConferenceSystem {
      * @return Return true if the account is created successfully, false otherwise.
      */
     public boolean signup(String username, String password){
-        if (um.canCreateUser(username, gw) && checkValidPassword(password)){
-            um.createAttendee(password, username, gw);
-            return true;
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            if (um.canCreateUser(username, gw) && checkValidPassword(password)){
+                um.createAttendee(password, username, gw);
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -119,18 +129,20 @@ public class ConferenceSystem {
      *         returns 2 when the user is an Attendee/VIP.
      */
     public int login(String username, String password){
-        if (um.isExistingUser(username, gw)){
-            String dbPassword = um.getUserPassword(username, gw);
-            if (dbPassword.equals(password)){
-                this.user = um.getUserID(username, gw);
-                ms.setUser(this.user);
-                vs.setUser(this.user);
-                ems.setUser(this.user);
-                ees.setUser(this.user);
-                return um.getUserCategory(this.user, gw);
+        return gw.inUnitOfWork(() -> {
+            if (um.isExistingUser(username, gw)){
+                String dbPassword = um.getUserPassword(username, gw);
+                if (dbPassword.equals(password)){
+                    this.user = um.getUserID(username, gw);
+                    ms.setUser(this.user);
+                    vs.setUser(this.user);
+                    ems.setUser(this.user);
+                    ees.setUser(this.user);
+                    return um.getUserCategory(this.user, gw);
+                }
             }
-        }
-        return -1;
+            return -1;
+        });
     }
 
     /**
@@ -140,12 +152,14 @@ public class ConferenceSystem {
      * @return Returns True when the password is valid and is changed. False otherwise.
      */
     public boolean resetPassword(String newPassword){
-        // passwords should always be 6 characters or longer
-        if (newPassword.length() >= 6){
-            um.setPassword(user, newPassword, gw);
-            return true;
-        }
-        return false;
+        return gw.inUnitOfWork(() -> {
+            // passwords should always be 6 characters or longer
+            if (newPassword.length() >= 6){
+                um.setPassword(user, newPassword, gw);
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -156,7 +170,7 @@ public class ConferenceSystem {
      * @return Return user's ID
      */
     public String getUserIDbyUserName(String username){
-        return Integer.toString(um.getUserID(username, gw));
+        return gw.inUnitOfWork(() -> Integer.toString(um.getUserID(username, gw)));
     }
 
     /**
@@ -167,7 +181,7 @@ public class ConferenceSystem {
      */
     public String getUserNameByID(String userID){
         int uID = Integer.parseInt(userID);
-        return um.getUserName(uID, gw);
+        return gw.inUnitOfWork(() -> um.getUserName(uID, gw));
     }
 
     /**
@@ -177,17 +191,19 @@ public class ConferenceSystem {
      * @return Return true when successfully added a new room, false otherwise.
      */
     public boolean addNewRoom(String roomNumber, String capacity){
-        try{
-            int cap = Integer.parseInt(capacity);
-            if (rm.canAddRoom(roomNumber, gw)){
-                rm.addRoom(roomNumber, cap, gw);
-                return true;
+        return gw.inUnitOfWork(() -> {
+            try{
+                int cap = Integer.parseInt(capacity);
+                if (rm.canAddRoom(roomNumber, gw)){
+                    rm.addRoom(roomNumber, cap, gw);
+                    return true;
+                }
+                return false;
             }
-            return false;
-        }
-        catch(NumberFormatException nfe){
-            return false;
-        }
+            catch(NumberFormatException nfe){
+                return false;
+            }
+        });
     }
 
     /**
@@ -198,7 +214,7 @@ public class ConferenceSystem {
      * @return Return true if the message is sent successfully, false when input is invalid.
      */
     public boolean messageAllAttendeesInEvent(String eventID, String title, String content){
-        return ms.messageAllAttendeesInEvent(eventID, title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageAllAttendeesInEvent(eventID, title, content, gw));
     }
 
     /**
@@ -208,7 +224,7 @@ public class ConferenceSystem {
      * @return Return true if the message is sent successfully, else return false.
      */
     public boolean messageAllUsersInAllSpeakingEvents(String title, String content){
-        return ms.messageAllUsersInAllSpeakingEvents(title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageAllUsersInAllSpeakingEvents(title, content, gw));
     }
 
     /**
@@ -220,7 +236,7 @@ public class ConferenceSystem {
      * @return Return true if the message is sent successfully, false when input is invalid.
      */
     public boolean messageOneSpecificUserInEvent(String eventID, String receiverID, String title, String content){
-        return ms.messageOneSpecificUserInEvent(eventID, receiverID, title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageOneSpecificUserInEvent(eventID, receiverID, title, content, gw));
     }
 
     /**
@@ -230,7 +246,7 @@ public class ConferenceSystem {
      * @return Return true if messages are sent successfully. False if the logged in user is not an organizer.
      */
     public boolean messageAllSpeakers(String title, String content){
-        return ms.messageAllSpeakers(title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageAllSpeakers(title, content, gw));
     }
 
     /**
@@ -242,7 +258,7 @@ public class ConferenceSystem {
      * is not allowed to message the speaker.
      */
     public boolean messageSpeaker(String receiverID, String title, String content){
-        return ms.messageSpeaker(receiverID, title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageSpeaker(receiverID, title, content, gw));
     }
 
     /**
@@ -253,7 +269,7 @@ public class ConferenceSystem {
      * perform this action.
      */
     public boolean messageAllAttendee(String title, String content){
-        return ms.messageAllAttendee(title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageAllAttendee(title, content, gw));
     }
 
     /**
@@ -265,7 +281,7 @@ public class ConferenceSystem {
      * attendee, or input is invalid.
      */
     public boolean messageAttendee(String receiverID, String title, String content){
-        return ms.messageAttendee(receiverID, title, content, gw);
+        return gw.inUnitOfWork(() -> ms.messageAttendee(receiverID, title, content, gw));
     }
 
     /**
@@ -275,7 +291,7 @@ public class ConferenceSystem {
      */
     // format [receivername, title, content]
     public List<List<String>> readSentMessages(){
-        return ms.readSentMessages(gw);
+        return gw.inUnitOfWork(() -> ms.readSentMessages(gw));
     }
 
     /**
@@ -285,11 +301,11 @@ public class ConferenceSystem {
      */
     // format [sendername, title, content]
     public List<List<String>> readReceivedMessages(){
-        return ms.readReceivedMessages(gw);
+        return gw.inUnitOfWork(() -> ms.readReceivedMessages(gw));
     }
 
     public List<List<String>> allMessageableAttendee() {
-        return vs.viewAllMessageableAttendee(gw);
+        return gw.inUnitOfWork(() -> vs.viewAllMessageableAttendee(gw));
     }
 
     /**
@@ -301,7 +317,7 @@ public class ConferenceSystem {
      * message.
      */
     public boolean replyMessage(String messageIndex, String title, String content){
-        return ms.replyMessage(messageIndex, title, content, gw);
+        return gw.inUnitOfWork(() -> ms.replyMessage(messageIndex, title, content, gw));
     }
 
     /**
@@ -311,11 +327,11 @@ public class ConferenceSystem {
      * @return Return True if user is successfully signed up for the event, false otherwise.
      */
     public boolean signUpForEvent(String eventID) {
-        return ees.signUpForEvent(eventID, gw);
+        return gw.inUnitOfWork(() -> ees.signUpForEvent(eventID, gw));
     }
 
     public boolean signUpForEventWaitList(String eventId) {
-        return ees.signUpForEventWaitList(eventId, gw);
+        return gw.inUnitOfWork(() -> ees.signUpForEventWaitList(eventId, gw));
     }
 
     /**
@@ -325,15 +341,15 @@ public class ConferenceSystem {
      * @return Return True when the user has successful cancelled their enrollment in the event.
      */
     public boolean cancelEnrollmentInEvent(String eventId){
-        return ees.cancelEnrollmentInEvent(eventId, gw);
+        return gw.inUnitOfWork(() -> ees.cancelEnrollmentInEvent(eventId, gw));
     }
 
     public boolean removeEventFromWaitList(String eventId) {
-        return ees.removeEventFromWaitList(eventId, gw);
+        return gw.inUnitOfWork(() -> ees.removeEventFromWaitList(eventId, gw));
     }
 
     public boolean modifySpeakerForEvent(String speakerID, String eventID){
-        return ems.modifySpeakerForEvent(speakerID, eventID, gw);
+        return gw.inUnitOfWork(() -> ems.modifySpeakerForEvent(speakerID, eventID, gw));
     }
 
 
@@ -350,15 +366,15 @@ public class ConferenceSystem {
     // if more than one speaker, pass "id1,id2"
     public boolean newEvent(int type, String startTime, String endTime, String speakerID,
                             String topic, String roomNumber, String capacity, boolean vipStatus){
-        return ems.newEvent(type, startTime, endTime, speakerID, topic, roomNumber, capacity, vipStatus, gw);
+        return gw.inUnitOfWork(() -> ems.newEvent(type, startTime, endTime, speakerID, topic, roomNumber, capacity, vipStatus, gw));
     }
 
     public boolean cancelEvent(String eventID){
-        return ems.cancelEvent(eventID, gw);
+        return gw.inUnitOfWork(() -> ems.cancelEvent(eventID, gw));
     }
 
     public boolean changeEventCapacity(String eventId, String capacity) {
-        return ems.changeEventCapacity(eventId, capacity, gw);
+        return gw.inUnitOfWork(() -> ems.changeEventCapacity(eventId, capacity, gw));
     }
 
     /**
@@ -369,7 +385,7 @@ public class ConferenceSystem {
     // type = true if want to change to vip
     // type = false if want to change to non-vip
     public boolean changeVipStatusOfEvent(String eventId, boolean type){
-        return ems.changeVipStatusOfEvent(eventId, type, gw);
+        return gw.inUnitOfWork(() -> ems.changeVipStatusOfEvent(eventId, type, gw));
     }
 
     /**
@@ -379,7 +395,7 @@ public class ConferenceSystem {
      */
     // format [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus]
     public List<List<String>> viewEvents(){
-        return vs.viewEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewEvents(gw));
     }
     /**
      * Return a list of events that the current logged in user has signed up for.
@@ -387,7 +403,7 @@ public class ConferenceSystem {
      */
     // format [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus]
     public List<List<String>> viewSignedUpEvents(){
-        return vs.viewSignedUpEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewSignedUpEvents(gw));
     }
 
     /**
@@ -396,7 +412,7 @@ public class ConferenceSystem {
      */
     // format [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus, speaker(s), capacity]
     public List<List<String>> viewOrganizedEvents(){
-        return vs.viewOrganizedEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewOrganizedEvents(gw));
     }
 
     /**
@@ -405,7 +421,7 @@ public class ConferenceSystem {
      */
     // format [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus]
     public List<List<String>> viewSpeakingEvents(){
-        return vs.viewSpeakingEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewSpeakingEvents(gw));
     }
 
     // format [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus]
@@ -417,7 +433,7 @@ public class ConferenceSystem {
          * @para userId is user id
          * @return List of List of Strings of the events
          */
-        return vs.viewCanSignUpEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewCanSignUpEvents(gw));
     }
 
     /**
@@ -426,7 +442,7 @@ public class ConferenceSystem {
      */
     // return format: [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus, waitlistLength]
     public List<List<String>> viewCanWaitlistEvents(){
-        return vs.viewCanWaitListEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewCanWaitListEvents(gw));
     }
 
 
@@ -436,7 +452,7 @@ public class ConferenceSystem {
     // when use this method, you need to restrict the type of user to be attendee type...
     // return format: [eventtype, title, eventID, startTime, endTime, duration, room, VIPstatus, waitlistRank]
     public List<List<String>> viewMyWaitList(){
-        return vs.viewMyWaitList(gw);
+        return gw.inUnitOfWork(() -> vs.viewMyWaitList(gw));
     }
 
     /**
@@ -444,7 +460,7 @@ public class ConferenceSystem {
      */
     // format: [ID, username]
     public List<List<String>> viewAttendeesInSpeakingEvents(){
-        return vs.viewAttendeesInSpeakingEvents(gw);
+        return gw.inUnitOfWork(() -> vs.viewAttendeesInSpeakingEvents(gw));
     }
 
 
@@ -453,7 +469,7 @@ public class ConferenceSystem {
      */
     // format: [ID, username]
     public List<List<String>> viewAllAttendees(){
-        return vs.viewAllAttendees(gw);
+        return gw.inUnitOfWork(() -> vs.viewAllAttendees(gw));
     }
 
     /**
@@ -461,7 +477,7 @@ public class ConferenceSystem {
      */
     //format: [ID, username]
     public List<List<String>> viewAllSpeakers(){
-        return vs.viewAllSpeakers(gw);
+        return gw.inUnitOfWork(() -> vs.viewAllSpeakers(gw));
     }
 
     /**
@@ -472,10 +488,10 @@ public class ConferenceSystem {
      */
     // format [roomnumber, capacity]
     public List<List<String>> viewAllRooms(){
-        return vs.viewAllRooms(gw);
+        return gw.inUnitOfWork(() -> vs.viewAllRooms(gw));
     }
 
     public List<List<String>> viewSignedUpUser(String eventId) {
-        return vs.viewSignedUpUser(Integer.parseInt(eventId), gw);
+        return gw.inUnitOfWork(() -> vs.viewSignedUpUser(Integer.parseInt(eventId), gw));
     }
 }
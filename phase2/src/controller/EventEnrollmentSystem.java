@@ -14,9 +14,7 @@ class EventEnrollmentSystem extends subSystem{
         try{
             int eid = Integer.parseInt(eventID);
             // check if the event exists, and user can sign up for event
-            if (em.canAddUserToEvent(user, eid, gw) && um.canSignUpForEvent(eid, user, gw)){ //need confirm
-                um.addEventToUser(eid, user, gw);
-                em.addUserToEvent(user, eid, gw);
+            if (um.canSignUpForEvent(eid, user, gw) && em.enrollUserInEvent(user, eid, gw)){
                 return true;
             }
             // return false when event doesn't exist or user cannot sign up for event
@@ -60,21 +58,11 @@ class EventEnrollmentSystem extends subSystem{
     boolean cancelEnrollmentInEvent(String eventId, GatewayFacade gw){
         try{
             int eid = Integer.parseInt(eventId);
-            if (em.canRemoveSignedUpUser(user ,eid, gw)){
-                em.removeSignedUpUser(user, eid, gw);
-                um.cancelEventFromUser(eid, user, gw);
-                int userId = em.add1stRankedWaitListUser(eid, gw);
-                um.transferWaitingEventToSignedUp(eid, userId, gw);
-                return true;
-            }
-            return false;
+            return em.cancelEnrollment(user, eid, gw);
         }
         catch(NumberFormatException nfe){
             return false;
         }
-        catch(IndexOutOfBoundsException ioob){ // return true when waitlist is empty
-            return true;
-        }
     }
 
     /**
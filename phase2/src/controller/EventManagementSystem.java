@@ -22,9 +22,8 @@ class EventManagementSystem extends subSystem{
                 em.changeVipStatusOfEvent(eID, type, gw);
                 if (type){ // change from non-vip to vip
                     List<Integer> droppedUsers = em.dropNonVipFromVipEvent(eID, gw);
-                    List<Integer> movedUsers = em.addWaitlistUsersToEvent(eID, gw);
                     um.dropNonVipEventFromNonVIP(droppedUsers, eID, gw);
-                    um.transferWaitingEventToSignedUp(eID, movedUsers, gw);
+                    em.addWaitlistUsersToEvent(eID, gw);
                 }
                 return true;
             }
@@ -248,11 +247,11 @@ class EventManagementSystem extends subSystem{
     private boolean newEventMoreThan1Speaker(int type1, int type2, ArrayList<Integer> sID, LocalDateTime sTime,
                                              LocalDateTime eTIme, String topic, int rID, int cap,
                                              boolean vipStatus, GatewayFacade gw){
-        if (type1 != 2){
+        if (type1 != 2 || !em.canCreateEvent(rID, sTime, eTIme, cap, gw) || um.isSpeakerBusy(sID, sTime, eTIme, gw)){
             return false;
         }
         for (int speakerID : sID){
-            if (!canCreateEvent(speakerID, rID, sTime, eTIme, cap, gw)){
+            if (!um.isExistingSpeaker(speakerID, gw)){
                 return false;
             }
         }
@@ -318,8 +317,7 @@ class EventManagementSystem extends subSystem{
             int cap = Integer.parseInt(capacity);
             int eid = Integer.parseInt(eventId);
             if (em.canChangeEventCapacity(eid, cap, gw) && um.canChangeEventCapacity(user, gw)) {
-                List<Integer> offWaitlistUsers = em.changeEventCapacity(eid, cap, gw);
-                um.transferWaitingEventToSignedUp(eid, offWaitlistUsers, gw);
+                em.changeEventCapacity(eid, cap, gw);
                 return true;
             }
             return false;
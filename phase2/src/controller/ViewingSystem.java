@@ -4,7 +4,6 @@ import gateway.Gateway;
 import gateway.GatewayFacade;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -15,11 +14,7 @@ class ViewingSystem extends subSystem{
      * Viewing System which allows users to view users, events and rooms in the Conference.
      */
     private List<List<String>> getEventList(List<Integer> idList, GatewayFacade gw){
-        List<List<String>> allEvents = new ArrayList<>();
-        for (Integer id : idList){
-            allEvents.add(em.getInfoOfEvent(id, gw));
-        }
-        return allEvents;
+        return em.getInfoOfEvents(idList, gw);
     }
 
     /**
@@ -28,14 +23,7 @@ class ViewingSystem extends subSystem{
      * @return all the organized event list
      */
     private List<List<String>> getOrganizedEventList(List<Integer> idList, GatewayFacade gw){
-        List<List<String>> allEvents = new ArrayList<>();
-        for (Integer id : idList){
-            List<String> info = em.getInfoOfEvent(id, gw);
-            info.add(em.getStringOfSpeakerOfEvent(id, gw));
-            info.add(String.valueOf(em.getCapacity(id, gw)));
-            allEvents.add(info);
-        }
-        return allEvents;
+        return em.getOrganizedInfoOfEvents(idList, gw);
     }
 
     /**
@@ -85,14 +73,8 @@ class ViewingSystem extends subSystem{
      * @return List of Strings of the events
      */
     List<List<String>> viewCanSignUpEvents(GatewayFacade gw) {
-        List<Integer> allEvents = em.getEventList(gw);
-        List<List<String>> allEventsInfo = new ArrayList<>();
-        for (Integer eventID : allEvents) {
-            if (um.canSignUpForEvent(eventID, user, gw) && em.canAddUserToEvent(user, eventID, gw)) {
-                allEventsInfo.add(em.getInfoOfEvent(eventID, gw));
-            }
-        }
-        return allEventsInfo;
+        List<Integer> events = um.getEventsCanSignUpFor(user, em.getOpenEventsFor(user, gw), gw);
+        return getEventList(events, gw);
     }
 
     // return format: [title, eventID, startTime, endTime, duration, room, VIPstatus, waitlistLength]
@@ -104,16 +86,8 @@ class ViewingSystem extends subSystem{
      *
      */
     List<List<String>> viewCanWaitListEvents(GatewayFacade gw){
-        List<Integer> allEvents = em.getEventList(gw);
-        List<List<String>> allEventsInfo = new ArrayList<>();
-        for (Integer eventID : allEvents){
-            if (um.canSignUpForEvent(eventID, user, gw) && em.canAddUserToWaitList(eventID, user, gw)){
-                List<String> info = em.getInfoOfEvent(eventID, gw);
-                info.add(String.valueOf(em.getWaitlistLength(eventID, gw)));
-                allEventsInfo.add(info);
-            }
-        }
-        return allEventsInfo;
+        List<Integer> events = um.getEventsCanWaitListFor(user, em.getFullEventsFor(user, gw), gw);
+        return em.getWaitlistInfoOfEvents(events, gw);
     }
 
     // when use this method, you need to restrict the type of user to be attendee type...
@@ -127,12 +101,10 @@ class ViewingSystem extends subSystem{
      */
     List<List<String>> viewMyWaitList(GatewayFacade gw) {
         List<Integer> myWaitList = um.getUserWaitList(user, gw);
-        List<List<String>> myWaitingEventsInfo = new ArrayList<>();
-        for (Integer eventId: myWaitList) {
-            int rank = um.getUserRankInWaitList(user, eventId, gw);
-            List<String> eventInfo = em.getInfoOfEvent(eventId, gw);
-            eventInfo.add(String.valueOf(rank));
-            myWaitingEventsInfo.add(eventInfo);
+        List<List<String>> myWaitingEventsInfo = em.getInfoOfEvents(myWaitList, gw);
+        List<Integer> ranks = um.getUserRanksInWaitLists(user, myWaitList, gw);
+        for (int i = 0; i < myWaitingEventsInfo.size(); i++) {
+            myWaitingEventsInfo.get(i).add(String.valueOf(ranks.get(i)));
         }
         return myWaitingEventsInfo;
     }
@@ -147,16 +119,8 @@ class ViewingSystem extends subSystem{
      */
     List<List<String>> viewAttendeesInSpeakingEvents(GatewayFacade gw){
         List<Integer> allSpeakingEvents = um.getSpeakerGivingEventList(user, gw);
-        Set<Integer> allAttendeesInEvents = new LinkedHashSet<>();
-        List<List<String>> sAllAttendeesInEvents = new ArrayList<>();
-        for (Integer eventID : allSpeakingEvents){
-            List<Integer> usersInEvent = em.getUserList(eventID, gw);
-            allAttendeesInEvents.addAll(usersInEvent);
-        }
-        for (Integer userID : allAttendeesInEvents){
-            sAllAttendeesInEvents.add(um.getUserInfo(userID, gw));
-        }
-        return sAllAttendeesInEvents;
+        Set<Integer> allAttendeesInEvents = em.getUserListOfEvents(allSpeakingEvents, gw);
+        return getUserList(new ArrayList<>(allAttendeesInEvents), gw);
     }
 
     /**
@@ -167,11 +131,7 @@ class ViewingSystem extends subSystem{
      *
      */
     private List<List<String>> getUserList(List<Integer> idList, GatewayFacade gw){
-        List<List<String>> sUser = new ArrayList<>();
-        for (Integer id : idList){
-            sUser.add(um.getUserInfo(id, gw));
-        }
-        return sUser;
+        return um.getUserInfos(idList, gw);
     }
 
     /**
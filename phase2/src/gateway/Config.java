@@ -16,11 +16,60 @@ public class Config {
     static final String DATABASE_PASSWORD = "207207";
 >>>>>>> master
 
+    /** "redis", "memory" or "log", e.g. run with -Dgateway.storage=memory to test without a Redis server */
+    static final String STORAGE = System.getProperty("gateway.storage", "redis");
+    static final String MEMORY_STORAGE = "memory";
+    static final String LOG_STORAGE = "log";
+    static final String LOG_DIR = System.getProperty("gateway.log.dir", "data");
+    static final int LOG_SEGMENT_SIZE = 64 << 20;
+
     static final String NEXT_USER_ID = "next_user_id";
     static final String NEXT_EVENT_ID = "next_event_id";
     static final String NEXT_ROOM_ID = "next_room_id";
+    static final int ID_BLOCK_SIZE = 100;
+    static final int CACHE_SIZE = 1000;
+    /** Number of values fetched per round trip when streaming a hash or a list */
+    static final int SCAN_PAGE_SIZE = 500;
+    /** Number of messages sent per atomic batch of a broadcast, see GatewayFacade.addMessages */
+    static final int MESSAGE_BATCH_SIZE = 500;
+    static final String CACHE_CHANNEL = "cache_invalidation";
     static final String USER_HASH = "user_hash";
     static final String EVENT_HASH = "event_hash";
     static final String ROOM_HASH = "room_hash";
+    /** The rosters of an event are kept apart from the event, in the set and the sorted set <roster>:<event id> */
+    static final String EVENT_SIGNED_ROSTER = "event_signed";
+    static final String EVENT_WAIT_ROSTER = "event_wait";
+    /** Counter ordering the users within a tier of every wait list */
+    static final String EVENT_WAIT_SEQUENCE = "event_wait_seq";
+    /** "json" or "binary" for the values of each gateway, the binary codec reads json too. Users and events are always
+     * json, as the enrollment scripts decode them on the server (see GatewayFacade.codecOf), so USER_CODEC and
+     * EVENT_CODEC are ignored until the scripts read another format. */
+    static final String USER_CODEC = System.getProperty("gateway.codec.user", "json");
+    static final String EVENT_CODEC = System.getProperty("gateway.codec.event", "json");
+    static final String ROOM_CODEC = System.getProperty("gateway.codec.room", "binary");
+    static final String MESSAGE_CODEC = System.getProperty("gateway.codec.message", "binary");
+    static final String VERSION_SUFFIX = "_version";
+    static final String TYPE_SUFFIX = "_type";
+    static final int CAS_MAX_RETRIES = 16;
     static final String MESSAGE_LIST = "message_list";
+    static final String MESSAGE_INBOX = "inbox";
+    static final String MESSAGE_OUTBOX = "outbox";
+    static final String MESSAGE_ALL = "all";
+    static final String USERNAME_INDEX = "username_index";
+    static final String ROOM_NUM_INDEX = "room_num_index";
+    /** The events ordered by start time and by end time */
+    static final String EVENT_START_INDEX = "event_start_index";
+    static final String EVENT_END_INDEX = "event_end_index";
+    /** The events of each room by time, in the sorted sets <schedule>:<room id> and <schedule>:<room id>:end */
+    static final String ROOM_SCHEDULE = "room_schedule";
+    /** The events given by each speaker by time, see ROOM_SCHEDULE */
+    static final String SPEAKER_SCHEDULE = "speaker_schedule";
+    /** The events an attendee may join by capacity state and VIP status, in the sets <eligible>:open[:regular] and
+     * <eligible>:full[:regular] */
+    static final String ELIGIBLE_EVENTS = "eligible_events";
+    /** The summary of each event for the schedule views */
+    static final String EVENT_SUMMARY_HASH = "event_summary";
+    /** The migrations of the data stored by earlier versions which have run, in a hash: name -> 1, see
+     * GatewayFacade.migrate */
+    static final String MIGRATIONS = "migrations";
 }
@@ -0,0 +1,171 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @program: group_0173
+ * @description: Gateway maintaining a projection of the events an attendee may join, in database with type of set,
+ * keyed by attendee class (VIP or not) and capacity state (open or full). The "can sign up" and "can wait list" menus
+ * read one set instead of checking every event.
+ * @note: The projection is kept in the sets <eligibleKey>:open, <eligibleKey>:open:regular, <eligibleKey>:full and
+ * <eligibleKey>:full:regular. The plain sets are for VIP users and hold every event, the regular sets leave the VIP
+ * events out. Each refresh writes the whole state of one event, so a later refresh corrects an earlier one. The
+ * writes of the rosters refresh the state on the server, see RedisScript.REFRESH.
+ * @create: 2020-12-17 10:40
+ **/
+public class EligibilityGateway extends Gateway<Integer> {
+
+    private String eligibleKey;
+    /** The states staged during a unit of work, event id -> [open, vip] (null if removed) */
+    private Map<Integer, boolean[]> staged;
+
+    /**
+    * @Description: Constructor
+    * @Param: [eligibleKey]
+    * @Date: 2020-12-17
+    */
+    public EligibilityGateway(String eligibleKey) {
+        super(Integer.class, false);
+        this.eligibleKey = eligibleKey;
+    }
+
+    /** Helper Func, the key of the set of the events in the state for the attendee class */
+    private String keyOf(boolean open, boolean vipUser) {
+        return keyOf(this.eligibleKey, open, vipUser);
+    }
+
+    /** Helper Func, the key of the set of the events in the state for the attendee class, also used by the enrollment
+     * scripts which keep the projection up to date (see RedisScript) */
+    static String keyOf(String eligibleKey, boolean open, boolean vipUser) {
+        return eligibleKey + (open ? ":open" : ":full") + (vipUser ? "" : ":regular");
+    }
+
+    /**
+    * @Description: Write the state of the event: whether it has a free spot, and whether it is for VIP users only
+    * @Param: [eventId, open, vipEvent]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void refresh (int eventId, boolean open, boolean vipEvent) {
+        if (staged != null) {
+            staged.put(eventId, new boolean[]{open, vipEvent});
+            return;
+        }
+        getStorage().atomically(batch -> write(batch, eventId, open, vipEvent));
+    }
+
+    /**
+    * @Description: Remove the event from the projection
+    * @Param: [eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int eventId) {
+        if (staged != null) {
+            staged.put(eventId, null);
+            return;
+        }
+        getStorage().atomically(batch -> erase(batch, eventId));
+    }
+
+    /**
+    * @Description: Get the ids of the events in the capacity state an attendee of the class may join, in ascending
+    * order
+    * @Param: [open, vipUser]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> get (boolean open, boolean vipUser) {
+        Set<Integer> ids = new HashSet<>();
+        for (String id : getStorage().smembers(keyOf(open, vipUser))) {
+            ids.add(Integer.valueOf(id));
+        }
+        if (staged != null) {
+            staged.forEach((eventId, state) -> {
+                if (state != null && state[0] == open && (vipUser || !state[1])) {
+                    ids.add(eventId);
+                } else {
+                    ids.remove(eventId);
+                }
+            });
+        }
+        List<Integer> list = new ArrayList<>(ids);
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Helper Func, queue the state of the event into the batch */
+    private void write (Storage.Batch batch, int eventId, boolean open, boolean vipEvent) {
+        String id = String.valueOf(eventId);
+        batch.sadd(keyOf(open, true), id);
+        batch.srem(keyOf(!open, true), id);
+        if (vipEvent) {
+            batch.srem(keyOf(open, false), id);
+        } else {
+            batch.sadd(keyOf(open, false), id);
+        }
+        batch.srem(keyOf(!open, false), id);
+    }
+
+    /** Helper Func, queue the removal of the event into the batch */
+    private void erase (Storage.Batch batch, int eventId) {
+        String id = String.valueOf(eventId);
+        for (boolean open : new boolean[]{true, false}) {
+            batch.srem(keyOf(open, true), id);
+            batch.srem(keyOf(open, false), id);
+        }
+    }
+
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new HashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.forEach((eventId, state) -> {
+            if (state != null) {
+                write(batch, eventId, state[0], state[1]);
+            } else {
+                erase(batch, eventId);
+            }
+        });
+        staged.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && !staged.isEmpty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+}
@@ -0,0 +1,102 @@
+package gateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @program: group_0173
+ * @description: Gateway running the enrollment scripts (see RedisScript) against the user and event hashes and the
+ * rosters of the event, which keep the eligibility and summary projections of the event up to date.
+ * @create: 2020-12-14 16:30
+ **/
+public class EnrollmentGateway extends Gateway<Integer> {
+
+    private String userHashKey;
+    private String eventHashKey;
+    private String signedRosterKey;
+    private String waitRosterKey;
+    private String eligibleKey;
+    private String summaryKey;
+
+    /**
+    * @Description: Constructor
+    * @Param: [userHashKey, eventHashKey, signedRosterKey, waitRosterKey, eligibleKey, summaryKey]
+    * @Date: 2020-12-17
+    */
+    public EnrollmentGateway(String userHashKey, String eventHashKey, String signedRosterKey, String waitRosterKey,
+                             String eligibleKey, String summaryKey) {
+        super(Integer.class, false);
+        this.userHashKey = userHashKey;
+        this.eventHashKey = eventHashKey;
+        this.signedRosterKey = signedRosterKey;
+        this.waitRosterKey = waitRosterKey;
+        this.eligibleKey = eligibleKey;
+        this.summaryKey = summaryKey;
+    }
+
+    /**
+    * @Description: Sign the user up for the event, see RedisScript.ENROLL for the returned status
+    * @Param: [userId, eventId]
+    * @return: int
+    * @Date: 2020-12-14
+    */
+    public int enroll (int userId, int eventId) {
+        return ((Long) run(RedisScript.ENROLL, eventId, String.valueOf(userId), String.valueOf(eventId))).intValue();
+    }
+
+    /**
+    * @Description: Cancel the enrollment of the user in the event and move the first ranked users of the wait list in.
+    * Return the ids of the moved users, null if the user has not signed up for the event.
+    * @Param: [userId, eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-14
+    */
+    public List<Integer> cancel (int userId, int eventId) {
+        List<Integer> ret = toIds(run(RedisScript.CANCEL, eventId, String.valueOf(userId), String.valueOf(eventId)));
+        return ret.remove(0) == 1 ? ret : null;
+    }
+
+    /**
+    * @Description: Move the first ranked users of the wait list into the event until it is full. Return their ids.
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-14
+    */
+    public List<Integer> promote (int eventId) {
+        return toIds(run(RedisScript.PROMOTE, eventId, String.valueOf(eventId)));
+    }
+
+    /**
+    * @Description: Refresh the eligibility and the counts of the event from its rosters in one round trip, after the
+    * rosters have been written directly. The state is read on the server, so the last refresh always wins.
+    * @Param: [eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void refresh (int eventId) {
+        run(RedisScript.REFRESH, eventId, String.valueOf(eventId));
+    }
+
+    /** Helper Func, run the script against the user and event hashes, the rosters of the event and the projections */
+    private Object run (RedisScript script, int eventId, String... args) {
+        List<String> keys = Arrays.asList(this.userHashKey, this.eventHashKey,
+                HashGateway.versionKeyOf(this.userHashKey), HashGateway.versionKeyOf(this.eventHashKey),
+                RosterGateway.keyOf(this.signedRosterKey, eventId), WaitListGateway.keyOf(this.waitRosterKey, eventId),
+                EligibilityGateway.keyOf(this.eligibleKey, true, true), EligibilityGateway.keyOf(this.eligibleKey, true, false),
+                EligibilityGateway.keyOf(this.eligibleKey, false, true),
+                EligibilityGateway.keyOf(this.eligibleKey, false, false), this.summaryKey);
+        List<String> argv = new ArrayList<>(Arrays.asList(Config.CACHE_CHANNEL, NearCache.invalidationPrefix()));
+        argv.addAll(Arrays.asList(args));
+        return getStorage().eval(script, keys, argv);
+    }
+
+    /** Helper Func, convert the array reply of a script to ids */
+    private List<Integer> toIds (Object reply) {
+        List<Integer> ids = new ArrayList<>();
+        for (Object id : (List<?>) reply) {
+            ids.add(((Long) id).intValue());
+        }
+        return ids;
+    }
+}
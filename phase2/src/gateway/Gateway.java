@@ -1,11 +1,12 @@
 package gateway;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import gateway.codec.Codec;
+import gateway.storage.JedisStorage;
+import gateway.storage.LogStorage;
+import gateway.storage.MemoryStorage;
+import gateway.storage.Storage;
 
+import java.io.File;
 import java.lang.reflect.Type;
 
 /**
@@ -15,15 +16,13 @@ import java.lang.reflect.Type;
  **/
 public abstract class Gateway<T> {
 
-    private static JedisPool jedisPool;
+    private static Storage storage;
 
     static final String DATABASE_URL = Config.DATABASE_URL;
     static final int DATABASE_PORT = Config.DATABASE_PORT;
     static final String DATABASE_PASSWORD = Config.DATABASE_PASSWORD;
 
-    private boolean genericEnable;
-    private Gson gson;
-    private Type type;
+    private Codec<T> codec;
 
     /** Constructor */
     /**
@@ -31,7 +30,7 @@ public abstract class Gateway<T> {
     * @Date: 2020-12-06
     */
     public Gateway() {
-        initJedisPool();
+        initStorage();
     }
 
     /**
@@ -40,145 +39,78 @@ public abstract class Gateway<T> {
     * @return:
     */
     public Gateway(Type type, boolean genericEnable) {
-        setAttributes(type, genericEnable);
-        initJedisPool();
+        this(Codec.of(Codec.JSON, type, genericEnable));
     }
 
-    /** Constructor */
     /**
-    * @Description: Helper function for setting attributes for constructor
-    * @Param: [type, genericEnable]
-    * @return: void
-    * @Date: 2020-12-10
+    * @Description: Constructor with the codec of the values
+    * @Param: [codec]
+    * @Date: 2020-12-15
     */
-    private void setAttributes (Type type, boolean genericEnable) {
-        this.type = type;
-        this.genericEnable = genericEnable;
-        if (genericEnable) {
-            this.gson = buildGson(type, new GenericAdapter());
-        } else {
-            this.gson = buildGson();
-        }
+    public Gateway(Codec<T> codec) {
+        this.codec = codec;
+        initStorage();
     }
 
-    /** Private Method - Jedis Pool */
+    /** Private Method - Storage */
     /**
-    * @Description: Initialization of the Jedis Pool.
+    * @Description: Initialization of the storage selected by Config.STORAGE, shared by all gateways.
     * @Param: []
     * @return: void
+    * @Date: 2020-12-15
     */
-    private void initJedisPool() {
-        if (jedisPool == null) {
-            JedisPoolConfig poolConfig = new JedisPoolConfig();
-            jedisPool = new JedisPool(poolConfig, DATABASE_URL, DATABASE_PORT, 10000, DATABASE_PASSWORD);
-            shutDownHook(); // ShutdownHook added
-            System.out.println("Gateway: " + jedisPool.toString() + " has been Established");
+    private static synchronized void initStorage() {
+        if (storage == null) {
+            if (Config.STORAGE.equals(Config.MEMORY_STORAGE)) {
+                storage = new MemoryStorage();
+                System.out.println("Gateway: In-memory storage has been Established");
+            } else if (Config.STORAGE.equals(Config.LOG_STORAGE)) {
+                storage = new LogStorage(new File(Config.LOG_DIR), Config.LOG_SEGMENT_SIZE);
+                System.out.println("Gateway: Log storage in " + Config.LOG_DIR + " has been Established");
+            } else {
+                storage = new JedisStorage(DATABASE_URL, DATABASE_PORT, DATABASE_PASSWORD);
+            }
             ping();
+            storage.load(RedisScript.values()); // the scripts are run by SHA1 afterwards
         }
     }
 
-    /**
-    * @Description: Close the current jedis pool and release the memory.
-    * @Param: []
-    * @return: void
-    */
-    private void close() {
-        if(jedisPool != null){
-            jedisPool.destroy();
-            System.out.println("Gateway: Jedis Pool has been terminated");
-        }
-    }
-
-    /**
-    * @Description: Setup a shutdown hook for close the jedis pool before termination of this program
-    * @Param: []
-    * @return: void
-    */
-    private void shutDownHook() {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> close()));
-        System.out.println(getClass() + "Gateway: ShutdownHook has been Added");
-    }
-
     /** Public Methods */
     /**
-    * @Description: Get the jedis from jedis pool
+    * @Description: Get the storage all gateways are built on
     * @Param: []
-    * @return: redis.clients.jedis.Jedis
+    * @return: gateway.storage.Storage
+    * @Date: 2020-12-15
     */
-    public Jedis getJedis() {
-        try{
-            return jedisPool.getResource();
-        }catch(Exception e) {
-            System.err.println(getClass() + "Gateway: Fail to get jedis from jedis pool\n");
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    /**
-    * @Description: Close the Jedis to release the memory.
-    * @Param: [jedis]
-    * @return: void
-    * @Date: 2020-12-10
-    */
-    public void closeJedis(Jedis jedis) {
-        if(null != jedis) jedis.close();
+    public Storage getStorage() {
+        return storage;
     }
 
     /**
     * @Description: Display the current ping status
     * @Param: []
     * @return: void
-    * @Date: 2020-12-10
+    * @Date: 2020-12-15
     */
-    public void ping() {
-        try(Jedis jedis = jedisPool.getResource()){
-            System.out.println("Gateway: Jedis" + (jedis.ping().equals("PONG") ? "is connected" : "is disconnected"));
-        }
+    public static void ping() {
+        System.out.println("Gateway: Storage " + (storage.ping() ? "is connected" : "is disconnected"));
     }
 
-    /** Private Methods - Gson Builder */
+    /** Public Methods - Codec */
     /**
-    * @Description: Return Gson with configuration
-    * @Param: []
-    * @return: com.google.gson.Gson
-    */
-    private Gson buildGson () {
-        return new GsonBuilder().serializeNulls().create();
-    }
-
-    /**
-    * @Description: Return Gson with configuration and specific type adapter
-    * @Param: [type, typeAdapter]
-    * @return: com.google.gson.Gson
-    */
-    private Gson buildGson (Type type, Object typeAdapter) {
-        return new GsonBuilder().registerTypeAdapter(type, typeAdapter).serializeNulls().create();
-    }
-
-    /** Public Methods - Gson */
-    /**
-    * @Description: serialize the given data with its type. (SerializationStrategy help with type analysis)
+    * @Description: serialize the given data with the codec of this gateway
     * @Param: [obj]
     * @return: java.lang.String
     */
     public String serialize (T obj) {
-        if (genericEnable) {
-            return new Serializer().serialize(obj, gson, type);
-        } else {
-            return gson.toJson(obj);
-        }
+        return codec.encode(obj);
     }
 
     /**
-    * @Description: deserialize the given data. (SerializationStrategy help with type analysis)
+    * @Description: deserialize the given data with the codec of this gateway
     * @Param: [data]
     */
     public T deserialize (String data) {
-        if (genericEnable) {
-            return (T)new Serializer().deserialize(data, gson, type);
-        } else {
-            return (T)gson.fromJson(data, type);
-        }
+        return codec.decode(data);
     }
 }
\ No newline at end of file
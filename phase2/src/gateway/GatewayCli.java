@@ -2,10 +2,16 @@ package gateway;
 
 import entity.*;
 import entity.event.*;
-import redis.clients.jedis.Jedis;
+import gateway.storage.LogStorage;
+import gateway.storage.Storage;
 import usecase.EventManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
@@ -33,6 +39,9 @@ public class GatewayCli extends Gateway{
             System.out.println("2. Check gateway errors");
             System.out.println("3. Format Database");
             System.out.println("4. Create new Organizer");
+            System.out.println("5. Display cache statistics");
+            System.out.println("6. Check log storage recovery");
+            System.out.println("7. Migrate data stored by earlier versions");
             System.out.println("0. Exit");
             input = scan.nextLine();
             switch (input) {
@@ -45,6 +54,16 @@ public class GatewayCli extends Gateway{
                 case "3":
                     gcli.rmrf();
                     break;
+                case "5":
+                    gcli.printCacheStatistics();
+                    break;
+                case "6":
+                    gcli.testLogStorage();
+                    break;
+                case "7":
+                    gatewayFacade.migrate();
+                    System.out.println("Gateway: Data has been migrated");
+                    break;
                 case "4":
                     gcli.createOrganizer(gatewayFacade);
                 case "0":
@@ -70,53 +89,81 @@ public class GatewayCli extends Gateway{
 
     /** Format Database*/
     private void rmrf() {
-        Jedis jedis = getJedis();
+        Storage storage = getStorage();
         Scanner scan = new Scanner(System.in);
         System.out.println(ANSI_RED + "Gateway: Warning! Are you sure want to FORMAT Database! (N/Y)" + ANSI_RESET);
         String input = scan.nextLine();
         if (input.equals("Y")){
             System.out.println("Gateway: FORMATTING Database ...");
             System.out.print("Process:");
-            jedis.del(Config.NEXT_USER_ID);
+            storage.del(Config.NEXT_USER_ID);
+            System.out.print("**");
+            storage.del(Config.NEXT_EVENT_ID);
+            System.out.print("**");
+            storage.del(Config.NEXT_ROOM_ID);
+            System.out.print("**");
+            storage.del(Config.USER_HASH);
             System.out.print("**");
-            jedis.del(Config.NEXT_EVENT_ID);
+            storage.del(Config.EVENT_HASH);
             System.out.print("**");
-            jedis.del(Config.NEXT_ROOM_ID);
+            storage.del(Config.ROOM_HASH);
             System.out.print("**");
-            jedis.del(Config.USER_HASH);
+            storage.del(HashGateway.versionKeyOf(Config.USER_HASH), HashGateway.versionKeyOf(Config.EVENT_HASH),
+                    HashGateway.versionKeyOf(Config.ROOM_HASH));
             System.out.print("**");
-            jedis.del(Config.EVENT_HASH);
+            storage.del(HashGateway.typeKeyOf(Config.USER_HASH), HashGateway.typeKeyOf(Config.EVENT_HASH));
             System.out.print("**");
-            jedis.del(Config.ROOM_HASH);
+            storage.keys(Config.EVENT_SIGNED_ROSTER + ":*").forEach(storage::del);
+            storage.keys(Config.EVENT_WAIT_ROSTER + ":*").forEach(storage::del);
+            storage.del(Config.EVENT_WAIT_SEQUENCE);
             System.out.print("**");
-            jedis.del(Config.MESSAGE_LIST);
+            storage.del(Config.MESSAGE_LIST);
+            System.out.print("**");
+            storage.keys(Config.MESSAGE_LIST + ":*").forEach(storage::del);
+            System.out.print("**");
+            NearCache.invalidateAll(storage);
+            System.out.print("**");
+            storage.del(Config.USERNAME_INDEX);
+            System.out.print("**");
+            storage.del(Config.ROOM_NUM_INDEX);
+            System.out.print("**");
+            storage.del(Config.EVENT_START_INDEX, Config.EVENT_END_INDEX);
+            storage.keys(Config.ROOM_SCHEDULE + ":*").forEach(storage::del);
+            storage.keys(Config.SPEAKER_SCHEDULE + ":*").forEach(storage::del);
+            storage.keys(Config.ELIGIBLE_EVENTS + ":*").forEach(storage::del);
+            storage.del(Config.EVENT_SUMMARY_HASH);
+            storage.del(Config.MIGRATIONS);
             System.out.print("**");
             System.out.println("\nGateway: Database has been formatted");
         } else {
             System.out.println("Gateway: Format operation cancelled");
         }
-        closeJedis(jedis);
+    }
+
+    /** Display the hit/miss counters of the near caches in this process */
+    private void printCacheStatistics() {
+        System.out.println(ANSI_CYAN + "Gateway: Near cache statistics:" + ANSI_GREEN);
+        System.out.print(NearCache.statistics());
+        System.out.print(ANSI_RESET);
     }
 
     /** This method is used for test    */
     public void printDataBase () {
         GatewayFacade gf = new GatewayFacade();
-        Jedis jedis = getJedis();
+        Storage storage = getStorage();
         System.out.println(ANSI_CYAN + "DataBase: Displaying DATA:");
         System.out.println("---------- ---------- ---------- ---------- ---------- ----------" + ANSI_GREEN);
-        System.out.println("+ UserNextId: " + jedis.get(Config.NEXT_USER_ID));
-        System.out.println("+ EventNextId: " + jedis.get(Config.NEXT_EVENT_ID));
-        System.out.println("+ RoomNextId: " + jedis.get(Config.NEXT_ROOM_ID));
-        System.out.println("+ User List");
-        gf.getUserList().forEach((u) -> System.out.println("   - " + u.toString()));
-        System.out.println("+ Event List");
-        gf.getEventList().forEach((e) -> System.out.println("  - " + e.toString()));
+        System.out.println("+ UserNextId: " + storage.get(Config.NEXT_USER_ID));
+        System.out.println("+ EventNextId: " + storage.get(Config.NEXT_EVENT_ID));
+        System.out.println("+ RoomNextId: " + storage.get(Config.NEXT_ROOM_ID));
+        System.out.println("+ User List (" + gf.countUsers() + ")");
+        gf.streamUsers().forEach((u) -> System.out.println("   - " + u.toString()));
+        System.out.println("+ Event List (" + gf.countEvents() + ")");
+        gf.streamEvents().forEach((e) -> System.out.println("  - " + e.toString()));
         System.out.println("+ Room List");
-        gf.getRoomList().forEach((r) -> System.out.println("   - " + r.toString()));
+        gf.streamRooms().forEach((r) -> System.out.println("   - " + r.toString()));
         System.out.println("+ Message List");
-        gf.getMessageList().forEach((m) -> System.out.println("    - " + m.toString()));
-
-        jedis.close();
+        gf.streamMessages().forEach((m) -> System.out.println("    - " + m.toString()));
     }
 
     /** Enable '-ea' in VM option in config before testing */
@@ -126,6 +173,7 @@ public class GatewayCli extends Gateway{
         GatewayFacade gf = new GatewayFacade();
         testUser (gf);
         testEvent (gf);
+        testUserMutation (gf);
         testRoom (gf);
         testMessage(gf);
         System.out.println("\nGateway: All tests passed");
@@ -167,6 +215,34 @@ public class GatewayCli extends Gateway{
         System.out.print("**");
     }
 
+    /**
+     * @Description: test a user update interleaved with a script enrollment: the enrollment runs after the update has
+     * read the user, so the update is applied again to the enrolled user and neither change is lost
+     */
+    private void testUserMutation (GatewayFacade gf) {
+        EventManager em = new EventManager();
+        LocalDateTime sTime = LocalDateTime.parse("2020-11-14 18:00", em.getTimeFormatter());
+        LocalDateTime eTime = LocalDateTime.parse("2020-11-14 20:00", em.getTimeFormatter());
+
+        User u1 = new Attendee(998, "114514", "testJIMA");
+        NonSpeakerEvent e1 = new Party(sTime, eTime, 998, "test event", 250, 200);
+        gf.addUser(u1);
+        gf.addEvent(e1);
+        boolean[] enrolled = {false};
+        gf.mutateUser(998, user -> {
+            if (!enrolled[0]) {
+                enrolled[0] = gf.enrollUserInEvent(998, 998);
+            }
+            user.setPassword("1919810");
+        });
+        assert (enrolled[0]);
+        assert (gf.getAttendeeById(998).getSignedUpEventList().contains(998));
+        assert (gf.getUserById(998).getPassword().equals("1919810"));
+        gf.deleteEvent(e1);
+        gf.deleteUser(u1);
+        System.out.print("**");
+    }
+
     /**
      * @Description: test room
      */
@@ -200,4 +276,73 @@ public class GatewayCli extends Gateway{
         }
         System.out.print("**");
     }
+
+    /**
+     * @Description: test the log storage in a temporary directory: a batch which throws is undone, a torn record and
+     * the batch it ends are dropped on restart, and the values survive a compaction. Enable '-ea' before testing.
+     */
+    private void testLogStorage () {
+        System.out.println(ANSI_RED + "Please Enable '-ea' in VM option in configuration before testing" + ANSI_RESET);
+        System.out.println("Gateway: Testing log storage...");
+        try {
+            File dir = Files.createTempDirectory("gateway-log").toFile();
+            Storage log = new LogStorage(dir, 4096);
+            log.hset("test", "a", "1");
+            try {
+                log.atomically(batch -> {
+                    batch.hset("test", "a", "2");
+                    batch.hset("test", "b", "2");
+                    throw new IllegalStateException("test");
+                });
+            } catch (IllegalStateException ignored) {
+            }
+            assert (log.hget("test", "a").equals("1") && !log.hexists("test", "b"));
+            System.out.print("**");
+            // the last bytes written belong to the COMMIT record, tearing it is a crash in the middle of the batch
+            log.atomically(batch -> {
+                batch.hset("test", "c", "3");
+                batch.hset("test", "d", "4");
+            });
+            tearLastRecord(dir);
+            log = new LogStorage(dir, 4096);
+            assert (log.hget("test", "a").equals("1") && log.hkeys("test").size() == 1);
+            System.out.print("**");
+            for (int i = 0; i < 500; i++) {
+                log.hset("test", String.valueOf(i % 20), "value " + i);
+            }
+            for (int i = 0; i < 100 && segmentsOf(dir).length > 2; i++) {
+                Thread.sleep(100);
+            }
+            assert (segmentsOf(dir).length <= 2);
+            log = new LogStorage(dir, 4096);
+            assert (log.hget("test", "a").equals("1") && log.hget("test", "19").equals("value 499"));
+            System.out.print("**");
+            System.out.println("\nGateway: Log storage tests passed");
+        } catch (IOException | InterruptedException e) {
+            System.out.println(ANSI_RED + "Gateway: Log storage test failed, " + e.getMessage() + ANSI_RESET);
+        }
+    }
+
+    /** Helper Func, the segment files of the log in order */
+    private static File[] segmentsOf(File dir) {
+        File[] segments = dir.listFiles((d, name) -> name.endsWith(".log"));
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /** Helper Func, flip the last byte written to the newest segment, as a crash in the middle of a write would */
+    private static void tearLastRecord(File dir) throws IOException {
+        File[] segments = segmentsOf(dir);
+        try (RandomAccessFile file = new RandomAccessFile(segments[segments.length - 1], "rw")) {
+            long position = file.length() - 1;
+            file.seek(position);
+            while (position > 0 && file.read() == 0) {
+                file.seek(--position);
+            }
+            file.seek(position);
+            int last = file.read();
+            file.seek(position);
+            file.write(last ^ 0xFF);
+        }
+    }
 }
\ No newline at end of file
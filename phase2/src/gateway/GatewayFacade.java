@@ -2,8 +2,17 @@ package gateway;
 
 import entity.*;
 import entity.event.*;
+import gateway.bean.EventSummary;
+import gateway.codec.Codec;
 
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @program: group_0173
@@ -14,10 +23,239 @@ import java.util.*;
 public class GatewayFacade {
 
     /** Gateways */
-    private final HashGateway<User> userGateway = new HashGateway<>(Config.NEXT_USER_ID, Config.USER_HASH, User.class, true);
-    private final HashGateway<Event> eventGateway = new HashGateway<>(Config.NEXT_EVENT_ID, Config.EVENT_HASH, Event.class, true);
-    private final HashGateway<Room> roomGateway = new HashGateway<>(Config.NEXT_ROOM_ID, Config.ROOM_HASH, Room.class, false);
-    private final ListGateway<Message> messageGateway = new ListGateway<>(Config.MESSAGE_LIST, Message.class, false);
+    private final HashGateway<User> userGateway = new HashGateway<>(Config.NEXT_USER_ID, Config.USER_HASH,
+            codecOf(Config.USER_CODEC, User.class, true, true), true);
+    private final HashGateway<Event> eventGateway = new HashGateway<>(Config.NEXT_EVENT_ID, Config.EVENT_HASH,
+            codecOf(Config.EVENT_CODEC, Event.class, true, true), true);
+    private final HashGateway<Room> roomGateway = new HashGateway<>(Config.NEXT_ROOM_ID, Config.ROOM_HASH,
+            codecOf(Config.ROOM_CODEC, Room.class, false, false));
+    private final ListGateway<Message> messageGateway = new ListGateway<>(Config.MESSAGE_LIST,
+            codecOf(Config.MESSAGE_CODEC, Message.class, false, false));
+
+    /** Rosters of the events, kept apart from the events */
+    private final RosterGateway signedRoster = new RosterGateway(Config.EVENT_SIGNED_ROSTER);
+    private final WaitListGateway waitRoster = new WaitListGateway(Config.EVENT_WAIT_ROSTER,
+            Config.EVENT_WAIT_SEQUENCE);
+
+    /** Indexes */
+    private final IndexGateway usernameIndex = new IndexGateway(Config.USERNAME_INDEX);
+    private final IndexGateway roomNumIndex = new IndexGateway(Config.ROOM_NUM_INDEX);
+    private final TimeIndexGateway eventStartIndex = new TimeIndexGateway(Config.EVENT_START_INDEX);
+    private final TimeIndexGateway eventEndIndex = new TimeIndexGateway(Config.EVENT_END_INDEX);
+
+    /** Schedules, the events of each owner by time */
+    private final ScheduleGateway roomSchedule = new ScheduleGateway(Config.ROOM_SCHEDULE);
+    private final ScheduleGateway speakerSchedule = new ScheduleGateway(Config.SPEAKER_SCHEDULE);
+
+    /** Projections */
+    private final EligibilityGateway eligibleEvents = new EligibilityGateway(Config.ELIGIBLE_EVENTS);
+    private final SummaryGateway summaryGateway = new SummaryGateway(Config.EVENT_SUMMARY_HASH);
+
+    /** The migrations of the data stored by earlier versions which have run, see migrate */
+    private final IndexGateway migrations = new IndexGateway(Config.MIGRATIONS);
+
+    /** Scripts */
+    private final EnrollmentGateway enrollmentGateway = new EnrollmentGateway(Config.USER_HASH, Config.EVENT_HASH,
+            Config.EVENT_SIGNED_ROSTER, Config.EVENT_WAIT_ROSTER, Config.ELIGIBLE_EVENTS, Config.EVENT_SUMMARY_HASH);
+
+    /**
+    * @Description: Constructor. The data stored by earlier versions is not converted here, see migrate.
+    * @Date: 2020-12-17
+    */
+    public GatewayFacade() {
+    }
+
+    /**
+    * @Description: Migrate the data stored by earlier versions: build the type hashes, indexes, schedules, projections
+    * and message boxes, and move the rosters out of the events. Each migration runs once, in one batch with its flag
+    * in the hash Config.MIGRATIONS, so a failed migration leaves no flag and runs again from scratch. Run by an
+    * administrator (see GatewayCli) before the new version serves.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void migrate() {
+        migrateOnce("user_types", userGateway::buildTypes);
+        migrateOnce("event_types", eventGateway::buildTypes);
+        migrateOnce("event_rosters", () -> eventGateway.stream()
+                .filter(event -> !event.getSignedUpUserList().isEmpty() || !event.getWaitList().isEmpty())
+                .forEach(event -> {
+                    signedRoster.replace(event.getEventId(), event.getSignedUpUserList());
+                    waitRoster.replace(event.getEventId(), event.getWaitList(), this::isPriorityUser);
+                    clearRosters(event);
+                    eventGateway.update(event.getEventId(), event);
+                }));
+        migrateOnce("username_index",
+                () -> getUserList().forEach(user -> usernameIndex.put(user.getUserName(), user.getUserId())));
+        migrateOnce("room_num_index",
+                () -> getRoomList().forEach(room -> roomNumIndex.put(room.getRoomNum(), room.getRid())));
+        migrateOnce("event_time_indexes", () -> eventGateway.stream().forEach(event -> {
+            eventStartIndex.put(event.getEventId(), event.getStartTime());
+            eventEndIndex.put(event.getEventId(), event.getEndTime());
+        }));
+        migrateOnce("room_schedules", () -> eventGateway.stream().forEach(event -> roomSchedule.put(event.getRoomId(),
+                event.getEventId(), event.getStartTime(), event.getEndTime())));
+        migrateOnce("speaker_schedules", () -> givingEventsOfSpeakers().forEach(entry -> speakerSchedule.put(
+                entry.getKey(), entry.getValue().getEventId(), entry.getValue().getStartTime(),
+                entry.getValue().getEndTime())));
+        migrateOnce("event_projections", () -> eventGateway.stream().forEach(event -> {
+            int signedUpCount = signedRoster.size(event.getEventId());
+            eligibleEvents.refresh(event.getEventId(), signedUpCount < event.getCapacity(), event.isVipEvent());
+            summaryGateway.put(summaryOf(event));
+            summaryGateway.putCounts(event.getEventId(), signedUpCount, waitRoster.size(event.getEventId()));
+        }));
+        migrateOnce("message_boxes", () -> messageGateway.rebuildSubLists(this::messageBoxesOf));
+    }
+
+    /** Depth of nested units of work, 0 if there is none */
+    private int unitOfWorkDepth = 0;
+    private boolean rollbackOnly = false;
+    /** The events whose rosters have been written in the unit of work, refreshed once it is flushed */
+    private final Set<Integer> touchedEvents = new LinkedHashSet<>();
+
+    // ===== Unit of Work =====
+    /**
+    * @Description: Start a unit of work. Until it is committed, each entity is loaded from the remote database at most
+    * once, and all writes are staged in memory. Nested units of work join the outermost one.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-13
+    */
+    public void beginUnitOfWork() {
+        if (unitOfWorkDepth++ == 0) {
+            userGateway.begin();
+            eventGateway.begin();
+            signedRoster.begin();
+            waitRoster.begin();
+            roomGateway.begin();
+            messageGateway.begin();
+            usernameIndex.begin();
+            roomNumIndex.begin();
+            eventStartIndex.begin();
+            eventEndIndex.begin();
+            roomSchedule.begin();
+            speakerSchedule.begin();
+            eligibleEvents.begin();
+            summaryGateway.begin();
+            migrations.begin();
+        }
+    }
+
+    /**
+    * @Description: Commit the unit of work. All staged writes are sent in one atomic batch. The unit of work ends even
+    * if the batch throws, its staged writes are dropped then.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-13
+    */
+    public void commitUnitOfWork() {
+        if (--unitOfWorkDepth > 0) {
+            return;
+        }
+        try {
+            flushUnitOfWork();
+        } finally {
+            // a failed flush ends the unit of work as well, otherwise the gateways would stage every later write
+            discardUnitOfWork();
+        }
+    }
+
+    /**
+    * @Description: Roll back the unit of work. All staged writes are dropped. Rolling back a nested unit of work
+    * makes the outermost one roll back as well.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-13
+    */
+    public void rollbackUnitOfWork() {
+        if (--unitOfWorkDepth > 0) {
+            rollbackOnly = true;
+            return;
+        }
+        discardUnitOfWork();
+    }
+
+    /**
+    * @Description: Run the operation in a unit of work. It is committed if the operation returns, and rolled back if
+    * the operation throws.
+    * @Param: [operation]
+    * @return: R
+    * @Date: 2020-12-13
+    */
+    public <R> R inUnitOfWork(Supplier<R> operation) {
+        beginUnitOfWork();
+        R ret;
+        try {
+            ret = operation.get();
+        } catch (RuntimeException e) {
+            rollbackUnitOfWork();
+            throw e;
+        }
+        commitUnitOfWork();
+        return ret;
+    }
+
+    /**
+    * @Description: Send the staged writes of all gateways in one atomic batch (one MULTI/EXEC round trip on Redis).
+    * The unit of work goes on, so this is also used before running a script, which has to see the writes made so far.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-14
+    */
+    private void flushUnitOfWork() {
+        if (rollbackOnly || !(userGateway.isDirty() || eventGateway.isDirty() || signedRoster.isDirty()
+                || waitRoster.isDirty() || roomGateway.isDirty() || messageGateway.isDirty() || usernameIndex.isDirty()
+                || roomNumIndex.isDirty() || eventStartIndex.isDirty() || eventEndIndex.isDirty()
+                || roomSchedule.isDirty() || speakerSchedule.isDirty()
+                || eligibleEvents.isDirty() || summaryGateway.isDirty() || migrations.isDirty())) {
+            return;
+        }
+        userGateway.getStorage().atomically(batch -> {
+            userGateway.flush(batch);
+            eventGateway.flush(batch);
+            signedRoster.flush(batch);
+            waitRoster.flush(batch);
+            roomGateway.flush(batch);
+            messageGateway.flush(batch);
+            usernameIndex.flush(batch);
+            roomNumIndex.flush(batch);
+            eventStartIndex.flush(batch);
+            eventEndIndex.flush(batch);
+            roomSchedule.flush(batch);
+            speakerSchedule.flush(batch);
+            eligibleEvents.flush(batch);
+            summaryGateway.flush(batch);
+            migrations.flush(batch);
+        });
+        userGateway.afterFlush();
+        eventGateway.afterFlush();
+        roomGateway.afterFlush();
+        for (int eventId : touchedEvents) {
+            enrollmentGateway.refresh(eventId);
+        }
+        touchedEvents.clear();
+    }
+
+    /** Helper Func, drop the staged writes of all gateways */
+    private void discardUnitOfWork() {
+        rollbackOnly = false;
+        touchedEvents.clear();
+        userGateway.discard();
+        eventGateway.discard();
+        signedRoster.discard();
+        waitRoster.discard();
+        roomGateway.discard();
+        messageGateway.discard();
+        usernameIndex.discard();
+        roomNumIndex.discard();
+        eventStartIndex.discard();
+        eventEndIndex.discard();
+        roomSchedule.discard();
+        speakerSchedule.discard();
+        eligibleEvents.discard();
+        summaryGateway.discard();
+        migrations.discard();
+    }
 
     /** Return the next user id and self increase by 1 */
     public int getNextUserId() {
@@ -44,16 +282,67 @@ public class GatewayFacade {
      */
     public void addUser(User user) {
         userGateway.add(user.getUserId(), user);
+        usernameIndex.put(user.getUserName(), user.getUserId());
     }
 
     /**
-    * @Description: Update User in the remote database.
+    * @Description: Update User in the remote database. The user is overwritten as a whole, so a change made meanwhile
+    * by others (e.g. the enrollment scripts) is lost; to change a field of a stored user, use mutateUser.
     * @Param: [user]
     * @return: void
     * @Date: 2020-12-06
     */
     public void updateUser(User user) {
         userGateway.update(user.getUserId(), user);
+        usernameIndex.put(user.getUserName(), user.getUserId());
+    }
+
+    /**
+    * @Description: Apply the mutation to the user and write it back with compare-and-set, retrying on concurrent
+    * writers such as the enrollment scripts, see HashGateway.mutate. The mutation may be applied more than once, so it
+    * must only change the user. Return the mutated user, null if it does not exist.
+    * @Param: [userId, mutation]
+    * @return: entity.User
+    * @Date: 2020-12-17
+    */
+    public User mutateUser(int userId, Consumer<User> mutation) {
+        flushUnitOfWork();
+        return userGateway.mutate(userId, mutation);
+    }
+
+    /**
+    * @Description: Put the event into the schedule of the speaker, to be called along with Speaker.addGivingEvent.
+    * Only the times of the event are fetched.
+    * @Param: [speakerId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void addEventToSpeakerSchedule(int speakerId, int eventId) {
+        Event event = eventGateway.get(eventId);
+        if (event != null) {
+            speakerSchedule.put(speakerId, eventId, event.getStartTime(), event.getEndTime());
+        }
+    }
+
+    /**
+    * @Description: Remove the event from the schedule of the speaker, to be called along with Speaker.removeGivingEvent
+    * @Param: [speakerId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void removeEventFromSpeakerSchedule(int speakerId, int eventId) {
+        speakerSchedule.remove(speakerId, eventId);
+    }
+
+    /**
+    * @Description: Whether the speaker gives an event overlapping the time window from start to end (events touching
+    * the window do not overlap it), in O(log n) by the schedule of the speaker without fetching any event
+    * @Param: [speakerId, start, end]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean isSpeakerBusy(int speakerId, LocalDateTime start, LocalDateTime end) {
+        return speakerSchedule.isBusy(speakerId, start, end);
     }
 
     /**
@@ -64,6 +353,7 @@ public class GatewayFacade {
     */
     public void deleteUser(User user) {
         userGateway.delete(user.getUserId());
+        usernameIndex.remove(user.getUserName());
     }
 
     /**
@@ -76,6 +366,48 @@ public class GatewayFacade {
         return userGateway.get(id);
     }
 
+    /**
+     * @Description: Get the class of the user with given id without fetching the user. Return null if it does not exist.
+     * @Param: [id]
+     * @return: java.lang.Class<? extends User>
+     * @Date: 2020-12-16
+     */
+    public Class<? extends User> getUserType(int id) {
+        return userGateway.getType(id);
+    }
+
+    /**
+     * @Description: Get the ids of the users whose class matches the filter, without fetching the users
+     * @Param: [filter]
+     * @return: java.util.List<java.lang.Integer>
+     * @Date: 2020-12-16
+     */
+    public List<Integer> getUserIdsOfType(Predicate<Class<? extends User>> filter) {
+        return userGateway.getIdsOfType(filter);
+    }
+
+    /**
+     * @Description: Stream the ids of the users whose class matches the filter page by page without fetching the users,
+     * for full scans in constant memory. Unordered; the unit of work is flushed first.
+     * @Param: [filter]
+     * @return: java.util.stream.Stream<java.lang.Integer>
+     * @Date: 2020-12-17
+     */
+    public Stream<Integer> streamUserIdsOfType(Predicate<Class<? extends User>> filter) {
+        flushUnitOfWork();
+        return userGateway.streamIdsOfType(filter);
+    }
+
+    /**
+     * @Description: Get users by given ids in one round trip, in the order of the ids. Null for the ids that do not exist.
+     * @Param: [ids]
+     * @return: java.util.List<User>
+     * @Date: 2020-12-14
+     */
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        return userGateway.getAll(ids);
+    }
+
     /**
      * @Description: Get the User List. *This is method may lag the performance.
      * @Param: []
@@ -88,19 +420,54 @@ public class GatewayFacade {
     }
 
     /**
-     * @Description: Get User by given username. Return none if it does not exist. *This is method may lag the performance. Then use `getUserById` instead.
+     * @Description: Stream all users page by page, for full scans in constant memory
+     * @Param: []
+     * @return: java.util.stream.Stream<User>
+     * @Date: 2020-12-16
+     */
+    public Stream<User> streamUsers() {
+        return userGateway.stream();
+    }
+
+    /**
+     * @Description: Get the ids of all users in ascending order, without fetching the users
+     * @Param: []
+     * @return: java.util.List<java.lang.Integer>
+     * @Date: 2020-12-16
+     */
+    public List<Integer> getUserIds() {
+        return userGateway.getIds();
+    }
+
+    /**
+     * @Description: Count the users without fetching them
+     * @Param: []
+     * @return: long
+     * @Date: 2020-12-16
+     */
+    public long countUsers() {
+        return userGateway.count();
+    }
+
+    /**
+     * @Description: Get User by given username through the username index. Return none if it does not exist.
      * @Param: [username]
      * @return: User
-     * @Date: 2020-11-28
+     * @Date: 2020-12-12
      */
     public User getUserByUserName(String username) {
-        ArrayList<User> userList = (ArrayList<User>) getUserList();
-        for (User u : userList) {
-            if (u.getUserName().equals(username)) {
-                return u;
-            }
-        }
-        return null;
+        Integer uid = usernameIndex.get(username);
+        return uid != null ? getUserById(uid) : null;
+    }
+
+    /**
+     * @Description: Check whether the username has been taken, without fetching the user.
+     * @Param: [username]
+     * @return: boolean
+     * @Date: 2020-12-12
+     */
+    public boolean isExistingUserName(String username) {
+        return usernameIndex.contains(username);
     }
 
     /**
@@ -190,33 +557,64 @@ public class GatewayFacade {
 
     // ===== Event: Hash=====
     /**
-     * @Description: Add event to the remote database.
+     * @Description: Add event to the remote database. The rosters are written apart from the event, in the same batch.
      * @Param: [event]
      * @return: void
-     * @Date: 2020-12-3
+     * @Date: 2020-12-17
      */
     public void addEvent(Event event) {
-        eventGateway.add(event.getEventId(), event);
+        writeEvent(event);
     }
 
     /**
-    * @Description: Update event in the remote database.
+    * @Description: Update event in the remote database, together with its rosters. To change only the scalar fields,
+    * mutateEvent does not write the rosters.
     * @Param: [event]
     * @return: void
-    * @Date: 2020-12-06
+    * @Date: 2020-12-17
     */
     public void updateEvent(Event event) {
-        eventGateway.update(event.getEventId(), event);
+        writeEvent(event);
     }
 
     /**
-    * @Description: Delete event in the remote database.
+    * @Description: Apply the mutation to the event and write it back with compare-and-set, retrying on concurrent
+    * writers, see HashGateway.mutate. The mutation may be applied more than once, so it must only change the event.
+    * The rosters are neither loaded nor written, so the cost does not depend on how many users have signed up; they
+    * are changed through the roster methods below. Return the mutated event without its rosters, null if it does not
+    * exist.
+    * @Param: [eventId, mutation]
+    * @return: entity.event.Event
+    * @Date: 2020-12-17
+    */
+    public Event mutateEvent(int eventId, Consumer<Event> mutation) {
+        flushUnitOfWork();
+        Event event = eventGateway.mutate(eventId, mutation.andThen(this::clearRosters));
+        if (event != null) {
+            summaryGateway.put(summaryOf(event));
+            enrollmentGateway.refresh(eventId);
+        }
+        return event;
+    }
+
+    /**
+    * @Description: Delete event in the remote database, together with its rosters, in one batch.
     * @Param: [event]
     * @return: void
-    * @Date: 2020-12-06
+    * @Date: 2020-12-17
     */
     public void deleteEvent(Event event) {
-        eventGateway.delete(event.getEventId());
+        inUnitOfWork(() -> {
+            eventGateway.delete(event.getEventId());
+            signedRoster.delete(event.getEventId());
+            waitRoster.delete(event.getEventId());
+            eventStartIndex.remove(event.getEventId());
+            eventEndIndex.remove(event.getEventId());
+            roomSchedule.remove(event.getRoomId(), event.getEventId());
+            eligibleEvents.remove(event.getEventId());
+            summaryGateway.remove(event.getEventId());
+            return null;
+        });
     }
 
     /**
@@ -226,7 +624,55 @@ public class GatewayFacade {
      * @Date: 2020-12-3
      */
     public List<Event> getEventList() {
-        return eventGateway.getList();
+        return streamEvents().collect(Collectors.toList());
+    }
+
+    /**
+     * @Description: Stream all events page by page, for full scans in constant memory. The rosters of each page are
+     * fetched in one round trip.
+     * @Param: []
+     * @return: java.util.stream.Stream<Event>
+     * @Date: 2020-12-17
+     */
+    public Stream<Event> streamEvents() {
+        Iterator<Event> events = eventGateway.stream().iterator();
+        Iterator<List<Event>> pages = new Iterator<List<Event>>() {
+            @Override
+            public boolean hasNext() {
+                return events.hasNext();
+            }
+
+            @Override
+            public List<Event> next() {
+                List<Event> page = new ArrayList<>();
+                while (events.hasNext() && page.size() < Config.SCAN_PAGE_SIZE) {
+                    page.add(events.next());
+                }
+                return withRosters(page);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * @Description: Get the ids of all events in ascending order, without fetching the events
+     * @Param: []
+     * @return: java.util.List<java.lang.Integer>
+     * @Date: 2020-12-16
+     */
+    public List<Integer> getEventIds() {
+        return eventGateway.getIds();
+    }
+
+    /**
+     * @Description: Count the events without fetching them
+     * @Param: []
+     * @return: long
+     * @Date: 2020-12-16
+     */
+    public long countEvents() {
+        return eventGateway.count();
     }
 
     /**
@@ -236,9 +682,84 @@ public class GatewayFacade {
      * @Date: 2020-12-3
      */
     public Event getEventById(int id) {
+        return withRosters(Collections.singletonList(eventGateway.get(id))).get(0);
+    }
+
+    /**
+     * @Description: Get event by given id without its rosters (left empty), so only the scalar fields are fetched.
+     * Return none if it does not exist.
+     * @Param: [id]
+     * @return: Event
+     * @Date: 2020-12-17
+     */
+    public Event getEventFieldsById(int id) {
         return eventGateway.get(id);
     }
 
+    /**
+     * @Description: Get the class of the event with given id without fetching the event. Return null if it does not exist.
+     * @Param: [id]
+     * @return: java.lang.Class<? extends Event>
+     * @Date: 2020-12-16
+     */
+    public Class<? extends Event> getEventType(int id) {
+        return eventGateway.getType(id);
+    }
+
+    /**
+     * @Description: Get events by given ids in one round trip, in the order of the ids. Null for the ids that do not exist.
+     * @Param: [ids]
+     * @return: java.util.List<Event>
+     * @Date: 2020-12-14
+     */
+    public List<Event> getEventsByIds(Collection<Integer> ids) {
+        return withRosters(eventGateway.getAll(ids));
+    }
+
+    /**
+     * @Description: Get events by given ids without their rosters (left empty) in one round trip, in the order of the
+     * ids. Null for the ids that do not exist.
+     * @Param: [ids]
+     * @return: java.util.List<Event>
+     * @Date: 2020-12-17
+     */
+    public List<Event> getEventFieldsByIds(Collection<Integer> ids) {
+        return eventGateway.getAll(ids);
+    }
+
+    /**
+     * @Description: Get the ids of the events starting from the given time to the given time (both inclusive), ordered
+     * by start time, without fetching the events. A null bound leaves that side of the window open.
+     * @Param: [from, to]
+     * @return: java.util.List<java.lang.Integer>
+     * @Date: 2020-12-17
+     */
+    public List<Integer> getEventIdsStartingBetween(LocalDateTime from, LocalDateTime to) {
+        return eventStartIndex.range(from, to);
+    }
+
+    /**
+     * @Description: Get the ids of the events ending from the given time to the given time (both inclusive), ordered
+     * by end time, without fetching the events. A null bound leaves that side of the window open.
+     * @Param: [from, to]
+     * @return: java.util.List<java.lang.Integer>
+     * @Date: 2020-12-17
+     */
+    public List<Integer> getEventIdsEndingBetween(LocalDateTime from, LocalDateTime to) {
+        return eventEndIndex.range(from, to);
+    }
+
+    /**
+     * @Description: Get the events starting from the given time to the given time, ordered by start time, in one round
+     * trip for the events, see getEventIdsStartingBetween
+     * @Param: [from, to]
+     * @return: java.util.List<Event>
+     * @Date: 2020-12-17
+     */
+    public List<Event> getEventsStartingBetween(LocalDateTime from, LocalDateTime to) {
+        return getEventsByIds(getEventIdsStartingBetween(from, to));
+    }
+
     /**
     * @Description: Get multi-speakers of the event by given id. Return none if it does not exist.
     * @Param: [id]
@@ -281,6 +802,225 @@ public class GatewayFacade {
         return null;
     }
 
+    // ===== Event Rosters: Set and List=====
+    /**
+    * @Description: Get the ids of the users signed up for the event in ascending order, without fetching the event
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> getSignedUpUsersOfEvent(int eventId) {
+        return signedRoster.get(eventId);
+    }
+
+    /**
+    * @Description: Check whether the user has signed up for the event, without fetching the event or its roster
+    * @Param: [userId, eventId]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean isUserSignedUpForEvent(int userId, int eventId) {
+        return signedRoster.contains(eventId, userId);
+    }
+
+    /**
+    * @Description: Count the users signed up for the event, without fetching the event or its roster
+    * @Param: [eventId]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int countSignedUpUsersOfEvent(int eventId) {
+        return signedRoster.size(eventId);
+    }
+
+    /**
+    * @Description: Get the ids of the users in the wait list of the event in order, without fetching the event
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> getWaitListOfEvent(int eventId) {
+        return waitRoster.get(eventId);
+    }
+
+    /**
+    * @Description: Add the user to the signed up users of the event, without rewriting the event
+    * @Param: [userId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void addUserToEvent(int userId, int eventId) {
+        signedRoster.add(eventId, userId);
+        refreshRosterState(eventId);
+    }
+
+    /**
+    * @Description: Remove the user from the signed up users of the event, without rewriting the event
+    * @Param: [userId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void removeUserFromEvent(int userId, int eventId) {
+        signedRoster.remove(eventId, userId);
+        refreshRosterState(eventId);
+    }
+
+    /**
+    * @Description: Whether the user is in the wait list of the event, without fetching the wait list
+    * @Param: [userId, eventId]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean isUserInWaitListOfEvent(int userId, int eventId) {
+        return waitRoster.contains(eventId, userId);
+    }
+
+    /**
+    * @Description: Get the rank (starting from 1) of the user in the wait list of the event, 0 if the user is not in it
+    * @Param: [userId, eventId]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int getRankInWaitListOfEvent(int userId, int eventId) {
+        Integer rank = waitRoster.rank(eventId, userId);
+        return rank == null ? 0 : rank + 1;
+    }
+
+    /**
+    * @Description: Count the users in the wait list of the event, without fetching the wait list
+    * @Param: [eventId]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int countWaitListOfEvent(int eventId) {
+        return waitRoster.size(eventId);
+    }
+
+    /**
+    * @Description: Get the first ranked user in the wait list of the event, null if it is empty
+    * @Param: [eventId]
+    * @return: java.lang.Integer
+    * @Date: 2020-12-17
+    */
+    public Integer getFirstInWaitListOfEvent(int eventId) {
+        return waitRoster.first(eventId);
+    }
+
+    /**
+    * @Description: Queue the user in the wait list of the event, without rewriting the event. A VIP user is queued
+    * after the other VIP users and before the rest.
+    * @Param: [userId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void addUserToWaitList(int userId, int eventId) {
+        waitRoster.add(eventId, userId, isPriorityUser(userId));
+        refreshRosterState(eventId);
+    }
+
+    /**
+    * @Description: Remove the user from the wait list of the event, without rewriting the event
+    * @Param: [userId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void removeUserFromWaitList(int userId, int eventId) {
+        waitRoster.remove(eventId, userId);
+        refreshRosterState(eventId);
+    }
+
+    // ===== Event Summary: Hash=====
+    /**
+    * @Description: Get the summaries of the events by given ids in one round trip, in the order of the ids. Null for
+    * the ids that do not exist.
+    * @Param: [ids]
+    * @return: java.util.List<gateway.bean.EventSummary>
+    * @Date: 2020-12-17
+    */
+    public List<EventSummary> getEventSummariesByIds(Collection<Integer> ids) {
+        return summaryGateway.getAll(ids);
+    }
+
+    /**
+    * @Description: Get the summary of the event by given id. Return null if it does not exist.
+    * @Param: [id]
+    * @return: gateway.bean.EventSummary
+    * @Date: 2020-12-17
+    */
+    public EventSummary getEventSummaryById(int id) {
+        return summaryGateway.getAll(Collections.singletonList(id)).get(0);
+    }
+
+    // ===== Eligibility: Set=====
+    /**
+    * @Description: Get the ids of the events with a free spot an attendee may sign up for by VIP status, in ascending
+    * order. Read from the eligibility projection, updated on every write of the events and their rosters.
+    * @Param: [vipUser]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> getOpenEventIds(boolean vipUser) {
+        return eligibleEvents.get(true, vipUser);
+    }
+
+    /**
+    * @Description: Get the ids of the full events an attendee may wait for by VIP status, in ascending order, see
+    * getOpenEventIds
+    * @Param: [vipUser]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> getFullEventIds(boolean vipUser) {
+        return eligibleEvents.get(false, vipUser);
+    }
+
+    // ===== Enrollment: Script=====
+    /**
+    * @Description: Sign the user up for the event in one atomic script, which checks the user is an attendee, the VIP
+    * status, duplicates and the capacity. Return true if the user is signed up.
+    * @Param: [userId, eventId]
+    * @return: boolean
+    * @Date: 2020-12-14
+    */
+    public boolean enrollUserInEvent(int userId, int eventId) {
+        flushUnitOfWork();
+        int status = enrollmentGateway.enroll(userId, eventId);
+        userGateway.evict(userId);
+        return status == 0;
+    }
+
+    /**
+    * @Description: Cancel the enrollment of the user in the event in one atomic script, which also moves the first
+    * ranked users of the wait list in. Return false if the user has not signed up for the event.
+    * @Param: [userId, eventId]
+    * @return: boolean
+    * @Date: 2020-12-14
+    */
+    public boolean cancelEnrollmentInEvent(int userId, int eventId) {
+        flushUnitOfWork();
+        List<Integer> promoted = enrollmentGateway.cancel(userId, eventId);
+        userGateway.evict(userId);
+        if (promoted == null) {
+            return false;
+        }
+        promoted.forEach(userGateway::evict);
+        return true;
+    }
+
+    /**
+    * @Description: Move the first ranked users of the wait list into the event until it is full, in one atomic script.
+    * Both the event and the moved users are updated. Return the ids of the moved users.
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-14
+    */
+    public List<Integer> promoteWaitListOfEvent(int eventId) {
+        flushUnitOfWork();
+        List<Integer> promoted = enrollmentGateway.promote(eventId);
+        promoted.forEach(userGateway::evict);
+        return promoted;
+    }
+
     // ===== Room: Hash=====
     /**
      * @Description: Add room to the remote database.
@@ -291,6 +1031,7 @@ public class GatewayFacade {
      */
     public void addRoom(Room room) {
         roomGateway.add(room.getRid(), room);
+        roomNumIndex.put(room.getRoomNum(), room.getRid());
     }
 
     /**
@@ -301,6 +1042,7 @@ public class GatewayFacade {
     */
     public void updateRoom(Room room) {
         roomGateway.update(room.getRid(), room);
+        roomNumIndex.put(room.getRoomNum(), room.getRid());
     }
 
     /**
@@ -311,6 +1053,7 @@ public class GatewayFacade {
     */
     public void deleteRoom(Room room) {
         roomGateway.delete(room.getRid());
+        roomNumIndex.remove(room.getRoomNum());
     }
 
     /**
@@ -323,6 +1066,16 @@ public class GatewayFacade {
         return roomGateway.getList();
     }
 
+    /**
+     * @Description: Stream all rooms page by page, for full scans in constant memory
+     * @Param: []
+     * @return: java.util.stream.Stream<Room>
+     * @Date: 2020-12-16
+     */
+    public Stream<Room> streamRooms() {
+        return roomGateway.stream();
+    }
+
     /**
      * @Description: Get room by given id. Return none if it does not exist.
      * @Param: [id]
@@ -334,34 +1087,91 @@ public class GatewayFacade {
     }
 
     /**
-     * @Description: Get room by given roomNum. Return none if it does not exist.
+     * @Description: Whether the room has an event overlapping the time window from start to end (events touching the
+     * window do not overlap it), in O(log n) by the schedule of the room without fetching any event
+     * @Param: [roomId, start, end]
+     * @return: boolean
+     * @Date: 2020-12-17
+     */
+    public boolean isRoomBooked(int roomId, LocalDateTime start, LocalDateTime end) {
+        return roomSchedule.isBusy(roomId, start, end);
+    }
+
+    /**
+     * @Description: Get rooms by given ids in one round trip, in the order of the ids. Null for the ids that do not exist.
+     * @Param: [ids]
+     * @return: java.util.List<Room>
+     * @Date: 2020-12-14
+     */
+    public List<Room> getRoomsByIds(Collection<Integer> ids) {
+        return roomGateway.getAll(ids);
+    }
+
+    /**
+     * @Description: Get room by given roomNum through the room number index. Return none if it does not exist.
      * @Param: [roomNum]
      * @return: Room
-     * @Date: 2020-11-28
+     * @Date: 2020-12-12
      */
     public Room getRoomByRoomNum(String roomNum) {
-        ArrayList<Room> roomList = (ArrayList<Room>) getRoomList();
-        for (Room r : roomList) {
-            if (r.getRoomNum().equals(roomNum)) {
-                return r;
-            }
-        }
-        return null;
+        Integer rid = roomNumIndex.get(roomNum);
+        return rid != null ? getRoomById(rid) : null;
+    }
+
+    /**
+     * @Description: Get room id by given roomNum without fetching the room. Return none if it does not exist.
+     * @Param: [roomNum]
+     * @return: java.lang.Integer
+     * @Date: 2020-12-12
+     */
+    public Integer getRoomIdByRoomNum(String roomNum) {
+        return roomNumIndex.get(roomNum);
+    }
+
+    /**
+     * @Description: Check whether the room number has been taken.
+     * @Param: [roomNum]
+     * @return: boolean
+     * @Date: 2020-12-12
+     */
+    public boolean isExistingRoomNum(String roomNum) {
+        return roomNumIndex.contains(roomNum);
     }
 
     // ===== Message: List =====
     /**
-     * @Description: add Message to the Message List
+     * @Description: add Message to the Message List, the sender's outbox and the receiver's inbox
      * @Param: [message]
      * @return: void
-     * @Date: 2020-12-3
+     * @Date: 2020-12-12
      */
     public void addMessage(Message message) {
-        messageGateway.add(message);
+        messageGateway.add(message, messageBoxesOf(message));
     }
 
     /**
-     * @Description: Get List of all messages
+     * @Description: Add the messages in atomic batches of Config.MESSAGE_BATCH_SIZE as they are streamed, so a
+     * broadcast to every user is never held in memory as a whole. The batches are sent at once, not staged in the
+     * unit of work, which is flushed first.
+     * @Param: [messages]
+     * @return: void
+     * @Date: 2020-12-17
+     */
+    public void addMessages(Stream<Message> messages) {
+        flushUnitOfWork();
+        List<Message> chunk = new ArrayList<>();
+        Iterator<Message> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == Config.MESSAGE_BATCH_SIZE || !iterator.hasNext()) {
+                messageGateway.addAll(chunk, this::messageBoxesOf);
+                chunk.clear();
+            }
+        }
+    }
+
+    /**
+     * @Description: Get List of all messages. *This is method may lag the performance.
      * @Param: []
      * @return: java.util.List<Message>
      * @Date: 2020-12-3
@@ -370,54 +1180,203 @@ public class GatewayFacade {
         return messageGateway.getList();
     }
 
+    /**
+     * @Description: Stream all messages window by window, for full scans in constant memory
+     * @Param: []
+     * @return: java.util.stream.Stream<Message>
+     * @Date: 2020-12-16
+     */
+    public Stream<Message> streamMessages() {
+        return messageGateway.stream();
+    }
+
     /**
      * @Description: Return the List of messages related to userId. Do not directly add message to this list!
      * @Param: [userId]
      * @return: java.util.List<Message>
-     * @Date: 2020-11-11
+     * @Date: 2020-12-12
      */
     public List<Message> getAllMessageListByUserId(int userId) {
-        ArrayList<Message> messageList = (ArrayList<Message>) getMessageList();
-        List<Message> ret = new ArrayList<>();
-        for (Message m : messageList) {
-            if (m.getReceiverId() == userId || m.getSenderId() == userId) {
-                ret.add(m);
-            }
-        }
-        return ret;
+        return messageGateway.getList(Config.MESSAGE_ALL + ":" + userId);
     }
 
     /**
      * @Description: Return the List of Sent messages related to userId. Do not directly add message to this list!
      * @Param: [userId]
      * @return: java.util.List<Message>
-     * @Date: 2020-11-14
+     * @Date: 2020-12-12
      */
     public List<Message> getSentMessageListByUserId(int userId) {
-        ArrayList<Message> messageList = (ArrayList<Message>) getMessageList();
-        List<Message> ret = new ArrayList<>();
-        for (Message m : messageList) {
-            if (m.getSenderId() == userId) {
-                ret.add(m);
-            }
-        }
-        return ret;
+        return messageGateway.getList(Config.MESSAGE_OUTBOX + ":" + userId);
     }
 
     /**
      * @Description: Return the List of Received messages related to userId. Do not directly add message to this list!
      * @Param: [userId]
      * @return: java.util.List<Message>
-     * @Date: 2020-11-14
+     * @Date: 2020-12-12
      */
     public List<Message> getReceivedMessageListByUserId(int userId) {
-        ArrayList<Message> messageList = (ArrayList<Message>) getMessageList();
-        List<Message> ret = new ArrayList<>();
-        for (Message m : messageList) {
-            if (m.getReceiverId() == userId) {
-                ret.add(m);
+        return messageGateway.getList(Config.MESSAGE_INBOX + ":" + userId);
+    }
+
+    /**
+     * @Description: Helper function of getting the message boxes a message belongs to
+     * @Param: [message]
+     * @return: java.util.Collection<java.lang.String>
+     * @Date: 2020-12-12
+     */
+    private Collection<String> messageBoxesOf(Message message) {
+        Set<String> boxes = new LinkedHashSet<>();
+        boxes.add(Config.MESSAGE_OUTBOX + ":" + message.getSenderId());
+        boxes.add(Config.MESSAGE_INBOX + ":" + message.getReceiverId());
+        boxes.add(Config.MESSAGE_ALL + ":" + message.getSenderId());
+        boxes.add(Config.MESSAGE_ALL + ":" + message.getReceiverId());
+        return boxes;
+    }
+
+    /**
+     * @Description: Helper function of writing the event without its rosters, and the rosters, indexes and projections
+     * apart from it, all in one batch
+     * @Param: [event]
+     * @return: void
+     * @Date: 2020-12-17
+     */
+    private void writeEvent(Event event) {
+        List<Integer> signed = new ArrayList<>(event.getSignedUpUserList());
+        List<Integer> waiting = new ArrayList<>(event.getWaitList());
+        inUnitOfWork(() -> {
+            clearRosters(event);
+            try {
+                eventGateway.add(event.getEventId(), event);
+            } finally {
+                event.getSignedUpUserList().addAll(signed);
+                event.getWaitList().addAll(waiting);
+            }
+            signedRoster.replace(event.getEventId(), signed);
+            waitRoster.replace(event.getEventId(), waiting, this::isPriorityUser);
+            eventStartIndex.put(event.getEventId(), event.getStartTime());
+            eventEndIndex.put(event.getEventId(), event.getEndTime());
+            roomSchedule.put(event.getRoomId(), event.getEventId(), event.getStartTime(), event.getEndTime());
+            int signedUpCount = new HashSet<>(signed).size();
+            eligibleEvents.refresh(event.getEventId(), signedUpCount < event.getCapacity(), event.isVipEvent());
+            summaryGateway.put(summaryOf(event));
+            summaryGateway.putCounts(event.getEventId(), signedUpCount, waiting.size());
+            return null;
+        });
+    }
+
+    /**
+     * @Description: Helper function of filling the rosters of the events (null for missing ones), two round trips for
+     * all of them
+     * @Param: [events]
+     * @return: java.util.List<Event>
+     * @Date: 2020-12-17
+     */
+    private List<Event> withRosters(List<Event> events) {
+        List<Integer> ids = new ArrayList<>();
+        for (Event event : events) {
+            if (event != null) {
+                ids.add(event.getEventId());
             }
         }
-        return ret;
+        List<List<Integer>> signed = signedRoster.getAll(ids);
+        List<List<Integer>> waiting = waitRoster.getAll(ids);
+        int i = 0;
+        for (Event event : events) {
+            if (event != null) {
+                clearRosters(event);
+                event.getSignedUpUserList().addAll(signed.get(i));
+                event.getWaitList().addAll(waiting.get(i));
+                i++;
+            }
+        }
+        return events;
+    }
+
+    /** Helper Func, refresh the eligibility and the counts of the event after its rosters have been written directly,
+     * once the unit of work is flushed if there is one */
+    private void refreshRosterState(int eventId) {
+        if (unitOfWorkDepth > 0) {
+            touchedEvents.add(eventId);
+        } else {
+            enrollmentGateway.refresh(eventId);
+        }
+    }
+
+    /**
+     * @Description: Helper function of building the summary of the event, with the number of its room and the names of
+     * its speakers. The counts are written apart, see SummaryGateway.
+     * @Param: [event]
+     * @return: gateway.bean.EventSummary
+     * @Date: 2020-12-17
+     */
+    private EventSummary summaryOf(Event event) {
+        Room room = roomGateway.get(event.getRoomId());
+        List<String> speakerNames = null;
+        if (!(event instanceof NonSpeakerEvent)) {
+            List<Integer> speakerIds = new ArrayList<>();
+            if (event instanceof OneSpeakerEvent) {
+                speakerIds.add(((OneSpeakerEvent) event).getSpeakerId());
+            } else if (event instanceof MultiSpeakerEvent && ((MultiSpeakerEvent) event).getSpeakerList() != null) {
+                speakerIds.addAll(((MultiSpeakerEvent) event).getSpeakerList());
+            }
+            speakerNames = new ArrayList<>();
+            for (User speaker : userGateway.getAll(speakerIds)) {
+                if (speaker != null) {
+                    speakerNames.add(speaker.getUserName());
+                }
+            }
+        }
+        return new EventSummary(event.getClass().getSimpleName(), event.getEventId(), event.getTitle(),
+                event.getStartTime(), event.getEndTime(), room != null ? room.getRoomNum() : null, event.isVipEvent(),
+                speakerNames, event.getCapacity());
+    }
+
+    /** Helper Func, whether the user is queued in the priority tier of wait lists */
+    private boolean isPriorityUser(int userId) {
+        Class<? extends User> type = userGateway.getType(userId);
+        return type != null && VipUser.class.isAssignableFrom(type);
+    }
+
+    /** Helper Func, the events given by each speaker as (speaker id, event) pairs, to build the speaker schedules */
+    private List<Map.Entry<Integer, Event>> givingEventsOfSpeakers() {
+        List<Map.Entry<Integer, Event>> entries = new ArrayList<>();
+        userGateway.stream().filter(user -> user instanceof Speaker).forEach(user -> {
+            for (Event event : eventGateway.getAll(((Speaker) user).get_GivingEventList())) {
+                if (event != null) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(user.getUserId(), event));
+                }
+            }
+        });
+        return entries;
+    }
+
+    /** Helper Func, empty the rosters of the event object */
+    private void clearRosters(Event event) {
+        event.getSignedUpUserList().clear();
+        event.getWaitList().clear();
+    }
+
+    /** Helper Func, run the migration in a unit of work which also records it, unless it has run before */
+    private void migrateOnce(String name, Runnable migration) {
+        if (!migrations.contains(name)) {
+            inUnitOfWork(() -> {
+                migration.run();
+                migrations.put(name, 1);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @Description: Helper function of getting the codec configured for a gateway. The values read by the enrollment
+     * scripts (see RedisScript) have to be json, so such a gateway uses the json codec whatever is configured.
+     * @Param: [name, type, genericEnable, readByScripts]
+     * @return: gateway.codec.Codec<T>
+     * @Date: 2020-12-15
+     */
+    private static <T> Codec<T> codecOf(String name, Class<T> type, boolean genericEnable, boolean readByScripts) {
+        return Codec.of(readByScripts ? Codec.JSON : name, type, genericEnable);
     }
-}
\ No newline at end of file
+}
@@ -1,22 +1,52 @@
 package gateway;
 
-import redis.clients.jedis.Jedis;
+import gateway.codec.Codec;
+import gateway.storage.Storage;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @program: group_0173
  * @description: Gateway operating one field-value in database with type of hash.
+ * @note: Every write increases the version of the field, kept in a parallel hash (<hashKey>_version), which is used by
+ * mutate to detect concurrent writers. A typed gateway also keeps the class name of each object in a parallel hash
+ * (<hashKey>_type), so the type of an object can be checked without fetching it.
  * @create: 2020-12-03 20:03
  **/
 public class HashGateway<T> extends Gateway<T>{
 
     private String hashKey;
     private String idKey;
+    private String versionKey;
+    private String typeKey;
+    private NearCache cache;
+    private StagedHash staged;
+    private StagedHash stagedTypes;
+    /** Writes queued by flush, field -> value (null if deleted), cached once the batch has been run */
+    private Map<String, String> flushed;
+
+    /** Classes by name, so each class is looked up once */
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
 
     /**
     * @Description: Constructor
@@ -24,73 +54,182 @@ public class HashGateway<T> extends Gateway<T>{
     * @Date: 2020-12-10
     */
     public HashGateway(String idKey, String hashKey, Type type, boolean genericEnable) {
-        super(type, genericEnable);
+        this(idKey, hashKey, Codec.of(Codec.JSON, type, genericEnable));
+    }
+
+    /**
+    * @Description: Constructor with the codec of the values
+    * @Param: [idKey, hashKey, codec]
+    * @Date: 2020-12-15
+    */
+    public HashGateway(String idKey, String hashKey, Codec<T> codec) {
+        this(idKey, hashKey, codec, false);
+    }
+
+    /**
+    * @Description: Constructor with the codec of the values, keeping the class of each object if typed
+    * @Param: [idKey, hashKey, codec, typed]
+    * @Date: 2020-12-16
+    */
+    public HashGateway(String idKey, String hashKey, Codec<T> codec, boolean typed) {
+        super(codec);
         this.idKey = idKey;
         this.hashKey = hashKey;
+        this.versionKey = versionKeyOf(hashKey);
+        this.typeKey = typed ? typeKeyOf(hashKey) : null;
+        this.cache = NearCache.of(hashKey, this);
     }
 
     /** ID methods */
 
-    /** Helper Func for get <key> id and increase it by 1 */
+    /** Helper Func for get <key> id without consuming it */
     public int getNextId () {
-        Jedis jedis = getJedis();
-        int ret = 0;
-        String response = jedis.get(this.idKey);
-        if (response == null) {
-            jedis.set(this.idKey, "1");
-        } else {
-            ret = Integer.parseInt(response);
-        }
-        closeJedis(jedis);
-        return ret;
+        return IdAllocator.of(this.idKey).peek(this);
     }
 
     /**
-     * @Description: increate the id
+     * @Description: Return the next id from the block of ids leased by this instance, see IdAllocator
      * @return the next id
      */
     public int getAndIncreaseNextId() {
-        Jedis jedis = getJedis();
-        int ret = 0;
-        String response = jedis.get(this.idKey);
-        if (response == null) {
-            jedis.set(this.idKey, "1");
-        } else {
-            ret = Integer.parseInt(response);
-            jedis.incr(this.idKey);
+        return IdAllocator.of(this.idKey).next(this);
+    }
+
+    /** Helper Func, the key of the hash keeping the versions of the fields in the given hash */
+    static String versionKeyOf(String hashKey) {
+        return hashKey + Config.VERSION_SUFFIX;
+    }
+
+    /** Helper Func, the key of the hash keeping the class names of the objects in the given hash */
+    static String typeKeyOf(String hashKey) {
+        return hashKey + Config.TYPE_SUFFIX;
+    }
+
+    /** Unit of work methods */
+    /**
+    * @Description: Start staging reads and writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-13
+    */
+    public void begin () {
+        staged = new StagedHash();
+        stagedTypes = new StagedHash();
+        flushed = new HashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch. The near caches of the other instances are updated by
+    * invalidations published in the same batch, the one of this instance by afterFlush. The unit of work keeps
+    * staging until discard.
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-15
+    */
+    public void flush (Storage.Batch batch) {
+        for (Map.Entry<String, String> write : staged.writes().entrySet()) {
+            if (write.getValue() != null) {
+                batch.hset(this.hashKey, write.getKey(), write.getValue());
+            } else {
+                batch.hdel(this.hashKey, write.getKey());
+            }
+            batch.hincrBy(this.versionKey, write.getKey(), 1);
+            cache.publish(batch::publish, write.getKey());
+            flushed.put(write.getKey(), write.getValue());
+        }
+        for (Map.Entry<String, String> write : stagedTypes.writes().entrySet()) {
+            if (write.getValue() != null) {
+                batch.hset(this.typeKey, write.getKey(), write.getValue());
+            } else {
+                batch.hdel(this.typeKey, write.getKey());
+            }
         }
-        closeJedis(jedis);
-        return ret;
+        staged.clean();
+        stagedTypes.clean();
+    }
+
+    /**
+    * @Description: Update the near cache of this instance with the writes queued by flush, once the batch has been
+    * run. Not called if the batch throws, so the cache never serves a value which has not been committed.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void afterFlush () {
+        flushed.forEach((field, value) -> {
+            if (value != null) {
+                cache.put(field, value);
+            } else {
+                cache.remove(field);
+            }
+        });
+        flushed.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && (staged.isDirty() || stagedTypes.isDirty());
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-13
+    */
+    public void discard () {
+        staged = null;
+        stagedTypes = null;
+        flushed = null;
     }
 
-    /** Helper Func, adding (id, value) to the <key>map */
-    private Map<String, String> getAll () {
-        Jedis jedis = getJedis();
-        Map<String, String> map = jedis.hgetAll(this.hashKey);
-        closeJedis(jedis);
-        return map;
+    /**
+    * @Description: Drop the object with given id from the unit of work and the near cache of this instance, after it
+    * has been changed in the remote hash map by others (e.g. a script), so the next get loads it again
+    * @Param: [id]
+    * @return: void
+    * @Date: 2020-12-14
+    */
+    public void evict (int id) {
+        if (staged != null) {
+            staged.forget(String.valueOf(id));
+            stagedTypes.forget(String.valueOf(id));
+        }
+        cache.evict(String.valueOf(id));
     }
 
     /** Hash Methods */
     /**
-    * @Description: Add object to the remote hash map
+    * @Description: Add object to the remote hash map, and keep the near cache of every instance up to date.
+    * Within a unit of work the write is staged until commit.
     * @Param: [id, obj]
     * @return: void
-    * @Date: 2020-12-10
+    * @Date: 2020-12-13
     */
     public void add (int id, T obj) {
         String value = serialize(obj);
-        Jedis jedis = getJedis();
-        String type = jedis.type(this.hashKey);
-        if (type.equals("hash")) {
-            jedis.hset(this.hashKey, String.valueOf(id), value);
-        } else {
-            jedis.del(this.hashKey);
-            Map<String,String> map = new HashMap<>();
-            map.put(String.valueOf(id), value);
-            jedis.hmset(this.hashKey,map);
+        if (staged != null) {
+            staged.write(String.valueOf(id), value);
+            if (typeKey != null) {
+                stagedTypes.write(String.valueOf(id), obj.getClass().getName());
+            }
+            return;
         }
-        closeJedis(jedis);
+        String field = String.valueOf(id);
+        // the value and its version in one batch, so a concurrent mutate never pairs the old value with the new version
+        getStorage().atomically(batch -> {
+            if (typeKey != null) {
+                batch.hset(this.typeKey, field, obj.getClass().getName());
+            }
+            batch.hset(this.hashKey, field, value);
+            batch.hincrBy(this.versionKey, field, 1);
+            cache.publish(batch::publish, field);
+        });
+        cache.put(field, value);
     }
     /**
     * @Description: Update the object to in hash map with filed id
@@ -103,18 +242,114 @@ public class HashGateway<T> extends Gateway<T>{
     }
 
     /**
-    * @Description: Get the object by given id in remote hash map
+    * @Description: Apply the mutation to the object with given id and write it back with compare-and-set, so writers
+    * never lose each other's updates. If the object has been changed since it was read, the mutation is applied again
+    * to the new object. The write is done at once, not staged in the unit of work (the caller has to flush it first).
+    * Return the mutated object, null if it does not exist.
+    * @Param: [id, mutation]
+    * @return: T
+    * @Date: 2020-12-14
+    */
+    public T mutate (int id, Consumer<T> mutation) {
+        String field = String.valueOf(id);
+        List<String> keys = Arrays.asList(this.hashKey, this.versionKey);
+        Storage storage = getStorage();
+        try {
+            for (int attempt = 0; attempt < Config.CAS_MAX_RETRIES; attempt++) {
+                // version before value, so a concurrent write in between makes the CAS fail rather than get lost
+                String version = storage.hget(this.versionKey, field);
+                String value = storage.hget(this.hashKey, field);
+                if (value == null) {
+                    return null;
+                }
+                T obj = deserialize(value);
+                mutation.accept(obj);
+                List<String> args = Arrays.asList(Config.CACHE_CHANNEL, NearCache.invalidationPrefix(), field,
+                        version != null ? version : "0", serialize(obj));
+                if ((Long) storage.eval(RedisScript.CAS, keys, args) == 1) {
+                    return obj;
+                }
+            }
+        } finally {
+            evict(id);
+        }
+        throw new ConcurrentModificationException(this.hashKey + ": " + field + " is changed by too many writers");
+    }
+
+    /**
+    * @Description: Get the object by given id, from the unit of work or the near cache if possible, otherwise from
+    * the remote hash map
     * @Param: [id]
     * @return: T
-    * @Date: 2020-12-10
+    * @Date: 2020-12-13
     */
     public T get (int id) {
-        Jedis jedis = getJedis();
-        String value = jedis.hget(this.hashKey, String.valueOf(id));
-        closeJedis(jedis);
+        String field = String.valueOf(id);
+        if (staged != null && staged.has(field)) {
+            String value = staged.get(field);
+            return value != null ? deserialize(value) : null;
+        }
+        String value = cache.get(field);
+        if (value == null) {
+            long stamp = cache.stamp();
+            value = getStorage().hget(this.hashKey, field);
+            if (value != null) {
+                cache.putIfUnchanged(field, value, stamp);
+            }
+        }
+        if (staged != null) {
+            staged.load(field, value);
+        }
         return value != null ? deserialize(value) : null;
     }
 
+    /**
+    * @Description: Get the objects by given ids in one HMGET round trip. Objects in the unit of work or the near cache
+    * are not fetched again. The result is in the order of the ids, with null for the ids that do not exist.
+    * @Param: [ids]
+    * @return: java.util.List<T>
+    * @Date: 2020-12-14
+    */
+    public List<T> getAll (Collection<Integer> ids) {
+        List<String> fields = new ArrayList<>();
+        for (int id : ids) {
+            fields.add(String.valueOf(id));
+        }
+        String[] values = new String[fields.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+            if (staged != null && staged.has(field)) {
+                values[i] = staged.get(field);
+            } else if ((values[i] = cache.get(field)) == null) {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            String[] missingFields = new String[missing.size()];
+            for (int i = 0; i < missing.size(); i++) {
+                missingFields[i] = fields.get(missing.get(i));
+            }
+            List<String> fetched = getStorage().hmget(this.hashKey, missingFields);
+            for (int i = 0; i < missing.size(); i++) {
+                String value = fetched.get(i);
+                values[missing.get(i)] = value;
+                if (value != null) {
+                    cache.putIfUnchanged(missingFields[i], value, stamp);
+                }
+                if (staged != null) {
+                    staged.load(missingFields[i], value);
+                }
+            }
+        }
+        List<T> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value != null ? deserialize(value) : null);
+        }
+        return list;
+    }
+
     /**
     * @Description: Delete the object with given id in the remote hash map
     * @Param: [id]
@@ -122,26 +357,210 @@ public class HashGateway<T> extends Gateway<T>{
     * @Date: 2020-12-10
     */
     public void delete (int id) {
-        Jedis jedis = getJedis();
-        jedis.hdel(this.hashKey, String.valueOf(id));
-        closeJedis(jedis);
+        if (staged != null) {
+            staged.remove(String.valueOf(id));
+            if (typeKey != null) {
+                stagedTypes.remove(String.valueOf(id));
+            }
+            return;
+        }
+        String field = String.valueOf(id);
+        getStorage().atomically(batch -> {
+            batch.hdel(this.hashKey, field);
+            batch.hincrBy(this.versionKey, field, 1);
+            if (typeKey != null) {
+                batch.hdel(this.typeKey, field);
+            }
+            cache.publish(batch::publish, field);
+        });
+        cache.remove(field);
     }
 
+    /** Projections */
     /**
-    * @Description: Get the while list from given id in the remote hash map
+    * @Description: Get the ids of all objects in the remote hash map in ascending order, from HKEYS without fetching
+    * the objects. Within a unit of work the staged adds and deletes are applied.
     * @Param: []
-    * @return: java.util.List<T>
-    * @Date: 2020-12-10
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-16
     */
-    public List<T> getList() {
-        List<String> dateList = new ArrayList<>(getAll().values());
-        List<T> list = new ArrayList<>();
-        for (String data : dateList) {
+    public List<Integer> getIds() {
+        Set<String> fields = getStorage().hkeys(this.hashKey);
+        if (staged != null) {
+            staged.values().forEach((field, value) -> {
+                if (value != null) {
+                    fields.add(field);
+                } else {
+                    fields.remove(field);
+                }
+            });
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (String field : fields) {
+            ids.add(Integer.valueOf(field));
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+    * @Description: Get the class of the object with given id from the type hash, without fetching the object. Return
+    * null if it does not exist. Only for typed gateways.
+    * @Param: [id]
+    * @return: java.lang.Class<? extends T>
+    * @Date: 2020-12-16
+    */
+    public Class<? extends T> getType(int id) {
+        String field = String.valueOf(id);
+        String className;
+        if (stagedTypes != null && stagedTypes.has(field)) {
+            className = stagedTypes.get(field);
+        } else if (staged != null && staged.has(field) && staged.get(field) == null) {
+            className = null;
+        } else {
+            className = getStorage().hget(this.typeKey, field);
+        }
+        return className != null ? classOf(className) : null;
+    }
+
+    /**
+    * @Description: Get the ids of the objects whose class matches the filter in ascending order, scanning the type
+    * hash without fetching the objects. Only for typed gateways.
+    * @Param: [filter]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-16
+    */
+    public List<Integer> getIdsOfType(Predicate<Class<? extends T>> filter) {
+        Map<String, String> stagedValues = stagedTypes != null ? new HashMap<>(stagedTypes.values()) : Collections.emptyMap();
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Map.Entry<String, String>> types = scan(this.typeKey);
+        while (types.hasNext()) {
+            Map.Entry<String, String> type = types.next();
+            if (!stagedValues.containsKey(type.getKey()) && filter.test(classOf(type.getValue()))) {
+                ids.add(Integer.valueOf(type.getKey()));
+            }
+        }
+        stagedValues.forEach((field, className) -> {
+            if (className != null && filter.test(classOf(className))) {
+                ids.add(Integer.valueOf(field));
+            }
+        });
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+    * @Description: Stream the ids of the objects whose class matches the filter, scanning the type hash page by page
+    * so the ids are never all held in memory. Unordered, and the staged writes of a unit of work are not applied (the
+    * caller has to flush them first). Only for typed gateways.
+    * @Param: [filter]
+    * @return: java.util.stream.Stream<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public Stream<Integer> streamIdsOfType(Predicate<Class<? extends T>> filter) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan(this.typeKey), Spliterator.ORDERED), false)
+                .filter(type -> filter.test(classOf(type.getValue())))
+                .map(type -> Integer.valueOf(type.getKey()));
+    }
+
+    /**
+    * @Description: Write the class of every object in the remote hash map into the type hash, for data written before
+    * the type hash was introduced (see GatewayFacade.migrate). Within a unit of work the writes are staged.
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-16
+    */
+    public void buildTypes() {
+        Iterator<Map.Entry<String, String>> values = scan(this.hashKey);
+        while (values.hasNext()) {
+            Map.Entry<String, String> value = values.next();
+            String type = deserialize(value.getValue()).getClass().getName();
+            if (stagedTypes != null) {
+                stagedTypes.write(value.getKey(), type);
+            } else {
+                getStorage().hset(this.typeKey, value.getKey(), type);
+            }
+        }
+    }
+
+    /** Helper Func, the class with given name */
+    @SuppressWarnings("unchecked")
+    private static <T> Class<? extends T> classOf(String className) {
+        return (Class<? extends T>) CLASSES.computeIfAbsent(className, name -> {
             try {
-                list.add((T)deserialize(data));
-            } catch(Exception e) {
+                return Class.forName(name);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Gateway: Unknown class " + name, e);
             }
+        });
+    }
+
+    /**
+    * @Description: Count the objects in the remote hash map with HLEN. With staged writes in the unit of work, the
+    * count is taken from getIds instead.
+    * @Param: []
+    * @return: long
+    * @Date: 2020-12-16
+    */
+    public long count() {
+        if (isDirty()) {
+            return getIds().size();
         }
-        return list;
+        return getStorage().hlen(this.hashKey);
+    }
+
+    /**
+    * @Description: Get the while list from given id in the remote hash map, see stream
+    * @Param: []
+    * @return: java.util.List<T>
+    * @Date: 2020-12-16
+    */
+    public List<T> getList() {
+        return stream().collect(Collectors.toList());
+    }
+
+    /**
+    * @Description: Stream all objects in the remote hash map. They are fetched page by page with HSCAN and
+    * deserialized one at a time, so a full scan runs in constant memory. Within a unit of work the staged objects
+    * replace the remote ones. An object may be streamed twice if the hash changes during the scan.
+    * @Param: []
+    * @return: java.util.stream.Stream<T>
+    * @Date: 2020-12-16
+    */
+    public Stream<T> stream() {
+        Map<String, String> stagedValues = staged != null ? new HashMap<>(staged.values()) : Collections.emptyMap();
+        Stream<String> values = StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan(this.hashKey), Spliterator.ORDERED), false)
+                .filter(entry -> !stagedValues.containsKey(entry.getKey()))
+                .map(Map.Entry::getValue);
+        return Stream.concat(values, stagedValues.values().stream().filter(Objects::nonNull))
+                .map(this::deserialize);
+    }
+
+    /** Helper Func, iterate the entries of the remote hash, fetching the next page when needed */
+    private Iterator<Map.Entry<String, String>> scan(String key) {
+        return new Iterator<Map.Entry<String, String>>() {
+            private String cursor = Storage.SCAN_END;
+            private boolean done = false;
+            private Iterator<Map.Entry<String, String>> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !done) {
+                    Storage.ScanPage next = getStorage().hscan(key, cursor, Config.SCAN_PAGE_SIZE);
+                    cursor = next.cursor;
+                    done = cursor.equals(Storage.SCAN_END);
+                    page = next.entries.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
     }
 }
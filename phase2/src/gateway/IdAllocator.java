@@ -0,0 +1,70 @@
+package gateway;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @program: group_0173
+ * @description: IdAllocator leases blocks of ids from a remote counter with INCRBY and hands them out locally.
+ * The remote counter always holds the next id which has not been leased by any instance, so ids are unique across
+ * instances, and only one in every block of ids costs a round trip.
+ * @create: 2020-12-12 17:05
+ **/
+public class IdAllocator {
+
+    /** One allocator per id key in this JVM, shared by all gateways using that key */
+    private static final Map<String, IdAllocator> allocators = new ConcurrentHashMap<>();
+
+    private final String idKey;
+    private final int blockSize;
+    private int next;
+    private int end;
+
+    /**
+    * @Description: Constructor
+    * @Param: [idKey, blockSize]
+    */
+    private IdAllocator(String idKey, int blockSize) {
+        this.idKey = idKey;
+        this.blockSize = blockSize;
+    }
+
+    /**
+    * @Description: Get the allocator of the given id key
+    * @Param: [idKey]
+    * @return: gateway.IdAllocator
+    */
+    public static IdAllocator of(String idKey) {
+        return allocators.computeIfAbsent(idKey, key -> new IdAllocator(key, Config.ID_BLOCK_SIZE));
+    }
+
+    /**
+    * @Description: Return the next id, leasing a new block from the remote counter when the current one runs out
+    * @Param: [gateway]
+    * @return: int
+    */
+    public synchronized int next(Gateway<?> gateway) {
+        if (next >= end) {
+            lease(gateway);
+        }
+        return next++;
+    }
+
+    /**
+    * @Description: Return the next id without consuming it
+    * @Param: [gateway]
+    * @return: int
+    */
+    public synchronized int peek(Gateway<?> gateway) {
+        if (next >= end) {
+            lease(gateway);
+        }
+        return next;
+    }
+
+    /** Helper Func, lease the block [end - blockSize, end) with one atomic INCRBY */
+    private void lease(Gateway<?> gateway) {
+        end = Math.toIntExact(gateway.getStorage().incrBy(this.idKey, this.blockSize));
+        next = end - this.blockSize;
+    }
+}
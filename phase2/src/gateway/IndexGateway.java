@@ -0,0 +1,122 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+/**
+ * @program: group_0173
+ * @description: Gateway maintaining a secondary index (field -> id) in database with type of hash.
+ * @create: 2020-12-12 14:20
+ **/
+public class IndexGateway extends Gateway<Integer> {
+
+    private String indexKey;
+    private StagedHash staged;
+
+    /**
+    * @Description: Constructor
+    * @Param: [indexKey]
+    */
+    public IndexGateway(String indexKey) {
+        super(Integer.class, false);
+        this.indexKey = indexKey;
+    }
+
+    /**
+    * @Description: Map the given field to the id
+    * @Param: [field, id]
+    * @return: void
+    */
+    public void put (String field, int id) {
+        if (staged != null) {
+            staged.write(field, String.valueOf(id));
+            return;
+        }
+        getStorage().hset(this.indexKey, field, String.valueOf(id));
+    }
+
+    /**
+    * @Description: Get the id mapped by the given field. Return null if it does not exist.
+    * @Param: [field]
+    * @return: java.lang.Integer
+    */
+    public Integer get (String field) {
+        String value;
+        if (staged != null && staged.has(field)) {
+            value = staged.get(field);
+        } else {
+            value = getStorage().hget(this.indexKey, field);
+            if (staged != null) {
+                staged.load(field, value);
+            }
+        }
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    /**
+    * @Description: Check whether the given field is in the index
+    * @Param: [field]
+    * @return: boolean
+    */
+    public boolean contains (String field) {
+        if (staged != null) {
+            return get(field) != null;
+        }
+        return getStorage().hexists(this.indexKey, field);
+    }
+
+    /**
+    * @Description: Remove the given field from the index
+    * @Param: [field]
+    * @return: void
+    */
+    public void remove (String field) {
+        if (staged != null) {
+            staged.remove(field);
+            return;
+        }
+        getStorage().hdel(this.indexKey, field);
+    }
+
+    /**
+    * @Description: Start staging reads and writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    */
+    public void begin () {
+        staged = new StagedHash();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    */
+    public void flush (Storage.Batch batch) {
+        staged.writes().forEach((field, value) -> {
+            if (value != null) {
+                batch.hset(this.indexKey, field, value);
+            } else {
+                batch.hdel(this.indexKey, field);
+            }
+        });
+        staged.clean();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && staged.isDirty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+}
@@ -1,10 +1,23 @@
 package gateway;
 
-import redis.clients.jedis.Jedis;
+import gateway.codec.Codec;
+import gateway.storage.Storage;
 
 import java.lang.reflect.Type;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @program: group_0173
@@ -14,13 +27,25 @@ import java.util.List;
 public class ListGateway<T> extends Gateway<T> {
 
     private String listKey;
+    /** Objects added during a unit of work with their sub keys, oldest first */
+    private List<Map.Entry<String, Collection<String>>> staged;
+    /** Sub lists rebuilt during a unit of work, sub key -> values in order */
+    private Map<String, List<String>> rebuilt;
 
     /**
     * @Description: Constructor
     * @Param: [listKey, type, genericEnable]
     */
     public ListGateway(String listKey, Type type, boolean genericEnable) {
-        super(type, genericEnable);
+        this(listKey, Codec.of(Codec.JSON, type, genericEnable));
+    }
+
+    /**
+    * @Description: Constructor with the codec of the values
+    * @Param: [listKey, codec]
+    */
+    public ListGateway(String listKey, Codec<T> codec) {
+        super(codec);
         this.listKey = listKey;
     }
 
@@ -31,13 +56,91 @@ public class ListGateway<T> extends Gateway<T> {
     */
     public void add (T obj) {
         String value = serialize(obj);
-        Jedis jedis = getJedis();
-        String type = jedis.type(this.listKey);
+        Storage storage = getStorage();
+        String type = storage.type(this.listKey);
         if (!type.equals("list")) {
-            jedis.del(this.listKey);
+            storage.del(this.listKey);
+        }
+        storage.lpush(this.listKey, value);
+    }
+
+    /**
+    * @Description: Add object to the remote list and to each of the given sub lists in one atomic batch
+    * @Param: [obj, subKeys]
+    * @return: void
+    */
+    public void add (T obj, Collection<String> subKeys) {
+        String value = serialize(obj);
+        if (staged != null) {
+            staged.add(new AbstractMap.SimpleEntry<>(value, subKeys));
+            return;
+        }
+        getStorage().atomically(batch -> push(batch, value, subKeys));
+    }
+
+    /**
+    * @Description: Add the objects to the remote list and to their sub lists in one atomic batch. The writes are done
+    * at once, not staged in the unit of work (the caller has to flush it first).
+    * @Param: [objs, subKeysOf]
+    * @return: void
+    */
+    public void addAll (Collection<T> objs, Function<T, Collection<String>> subKeysOf) {
+        List<Map.Entry<String, Collection<String>>> values = new ArrayList<>();
+        for (T obj : objs) {
+            values.add(new AbstractMap.SimpleEntry<>(serialize(obj), subKeysOf.apply(obj)));
+        }
+        getStorage().atomically(batch -> values.forEach(value -> push(batch, value.getKey(), value.getValue())));
+    }
+
+    /** Helper Func, queue the pushes of the value into the batch */
+    private void push (Storage.Batch batch, String value, Collection<String> subKeys) {
+        batch.lpush(this.listKey, value);
+        for (String subKey : subKeys) {
+            batch.lpush(subListKey(subKey), value);
         }
-        jedis.lpush(this.listKey, value);
-        closeJedis(jedis);
+    }
+
+    /**
+    * @Description: Start staging the objects added through add(obj, subKeys), see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    */
+    public void begin () {
+        staged = new ArrayList<>();
+        rebuilt = new LinkedHashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged objects into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    */
+    public void flush (Storage.Batch batch) {
+        rebuilt.forEach((subKey, values) -> replace(batch, subKey, values));
+        rebuilt.clear();
+        for (Map.Entry<String, Collection<String>> entry : staged) {
+            push(batch, entry.getKey(), entry.getValue());
+        }
+        staged.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && (!staged.isEmpty() || !rebuilt.isEmpty());
+    }
+
+    /**
+    * @Description: Drop the staged objects and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+        rebuilt = null;
     }
 
     /**
@@ -46,16 +149,113 @@ public class ListGateway<T> extends Gateway<T> {
     * @return: java.util.List<T>
     */
     public List<T> getList () {
-        Jedis jedis = getJedis();
-        List<String> dateList = jedis.lrange(this.listKey,0, -1);
-        closeJedis(jedis);
-        List<T> list = new ArrayList<>();
+        List<String> dateList = getStorage().lrange(this.listKey,0, -1);
+        return deserializeAll(dateList);
+    }
+
+    /**
+    * @Description: Stream the whole remote list, fetched in windows of LRANGE and deserialized one at a time, so a
+    * full scan runs in constant memory. Objects added during the scan may shift the windows, so an object may be
+    * streamed twice.
+    * @Param: []
+    * @return: java.util.stream.Stream<T>
+    */
+    public Stream<T> stream () {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan(this.listKey), Spliterator.ORDERED), false)
+                .map(this::deserialize);
+    }
+
+    /** Helper Func, iterate the values of the remote list, fetching the next window when needed */
+    private Iterator<String> scan (String key) {
+        return new Iterator<String>() {
+            private long start = 0;
+            private boolean done = false;
+            private Iterator<String> window = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                if (!window.hasNext() && !done) {
+                    List<String> next = getStorage().lrange(key, start, start + Config.SCAN_PAGE_SIZE - 1);
+                    start += next.size();
+                    done = next.size() < Config.SCAN_PAGE_SIZE;
+                    window = next.iterator();
+                }
+                return window.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return window.next();
+            }
+        };
+    }
+
+    /**
+    * @Description: Get the whole sub list, which only holds the objects added under the given sub key
+    * @Param: [subKey]
+    * @return: java.util.List<T>
+    */
+    public List<T> getList (String subKey) {
+        List<String> dateList = getStorage().lrange(subListKey(subKey), 0, -1);
+        if (staged != null) {
+            List<String> newest = new ArrayList<>();
+            for (Map.Entry<String, Collection<String>> entry : staged) {
+                if (entry.getValue().contains(subKey)) {
+                    newest.add(entry.getKey());
+                }
+            }
+            Collections.reverse(newest);
+            newest.addAll(dateList);
+            dateList = newest;
+        }
+        return deserializeAll(dateList);
+    }
+
+    /**
+    * @Description: Split the objects in the remote list into sub lists, for data stored before the sub lists were
+    * introduced (see GatewayFacade.migrate). Each sub list is replaced as a whole, so running it again gives the same
+    * sub lists; the order of each sub list follows the remote list. Within a unit of work the writes are staged. A
+    * message which can not be decoded throws, so the migration is not recorded with messages missing.
+    * @Param: [subKeysOf]
+    * @return: void
+    */
+    public void rebuildSubLists (Function<T, Collection<String>> subKeysOf) {
+        Storage storage = getStorage();
+        List<String> dateList = storage.type(this.listKey).equals("list") ?
+                storage.lrange(this.listKey, 0, -1) : new ArrayList<>();
+        Map<String, List<String>> subLists = new LinkedHashMap<>();
         for (String data : dateList) {
-            try {
-                list.add(deserialize(data));
-            } catch(Exception e) {
+            for (String subKey : subKeysOf.apply(deserialize(data))) {
+                subLists.computeIfAbsent(subKey, key -> new ArrayList<>()).add(data);
             }
         }
+        if (rebuilt != null) {
+            rebuilt.putAll(subLists);
+            return;
+        }
+        storage.atomically(batch -> subLists.forEach((subKey, values) -> replace(batch, subKey, values)));
+    }
+
+    /** Helper Func, queue the replacement of the sub list into the batch */
+    private void replace (Storage.Batch batch, String subKey, List<String> values) {
+        batch.del(subListKey(subKey));
+        batch.rpush(subListKey(subKey), values.toArray(new String[0]));
+    }
+
+    /** Helper Func, the key of the sub list */
+    private String subListKey (String subKey) {
+        return this.listKey + ":" + subKey;
+    }
+
+    /** Helper Func, deserialize all data, a broken one throws like in HashGateway */
+    private List<T> deserializeAll (List<String> dateList) {
+        List<T> list = new ArrayList<>();
+        for (String data : dateList) {
+            list.add(deserialize(data));
+        }
         return list;
     }
 }
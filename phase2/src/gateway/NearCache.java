@@ -0,0 +1,232 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: group_0173
+ * @description: NearCache is a bounded in-process LRU cache of the serialized values of one remote hash. Every write
+ * through a gateway publishes an invalidation on Config.CACHE_CHANNEL, so the caches of the other instances drop the
+ * stale value.
+ * @note: Values are cached in serialized form, so every read still gets its own copy of the object.
+ * @create: 2020-12-13 10:42
+ **/
+public class NearCache {
+
+    /** Id of this instance, so that it can skip its own invalidations */
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+    private static final String SEPARATOR = "|";
+    private static final String ALL = "*";
+
+    /** One cache per hash key in this JVM */
+    private static final Map<String, NearCache> caches = new ConcurrentHashMap<>();
+    private static boolean subscribed = false;
+
+    private final String hashKey;
+    private final Map<String, String> map;
+    private long stamp = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+    * @Description: Constructor
+    * @Param: [hashKey, maxSize]
+    */
+    private NearCache(String hashKey, int maxSize) {
+        this.hashKey = hashKey;
+        this.map = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+    * @Description: Get the cache of the given hash key, and start listening to invalidations of other instances
+    * @Param: [hashKey, gateway]
+    * @return: gateway.NearCache
+    */
+    public static NearCache of(String hashKey, Gateway<?> gateway) {
+        subscribe(gateway);
+        return caches.computeIfAbsent(hashKey, key -> new NearCache(key, Config.CACHE_SIZE));
+    }
+
+    /**
+    * @Description: Get the cached value of the field. Return null if it is not cached.
+    * @Param: [field]
+    * @return: java.lang.String
+    */
+    public synchronized String get(String field) {
+        String value = map.get(field);
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    /**
+    * @Description: Return the current stamp, which changes on every invalidation. Take it before reading the remote
+    * value and pass it to putIfUnchanged, so a value read before an invalidation is not cached.
+    * @Param: []
+    * @return: long
+    */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+    * @Description: Cache the value read from the remote hash, unless the cache has been invalidated since the stamp
+    * @Param: [field, value, stamp]
+    * @return: void
+    */
+    public synchronized void putIfUnchanged(String field, String value, long stamp) {
+        if (this.stamp == stamp) {
+            map.put(field, value);
+        }
+    }
+
+    /**
+    * @Description: Tell the other instances to drop their value of the field written by this instance. The publisher
+    * is either a Storage or a Storage.Batch, e.g. `batch::publish`, so the invalidation goes with the write.
+    * @Param: [publisher, field]
+    * @return: void
+    */
+    public void publish(BiConsumer<String, String> publisher, String field) {
+        publisher.accept(Config.CACHE_CHANNEL, INSTANCE_ID + SEPARATOR + hashKey + SEPARATOR + field);
+    }
+
+    /**
+    * @Description: Cache the value written by this instance. Called once the write has been run, so a value which is
+    * never committed is not cached.
+    * @Param: [field, value]
+    * @return: void
+    */
+    public synchronized void put(String field, String value) {
+        stamp++;
+        map.put(field, value);
+    }
+
+    /**
+    * @Description: Drop the value deleted by this instance, once the delete has been run
+    * @Param: [field]
+    * @return: void
+    */
+    public void remove(String field) {
+        invalidate(field);
+    }
+
+    /**
+    * @Description: Drop all values cached by every instance, e.g. after the database has been formatted
+    * @Param: [storage]
+    * @return: void
+    */
+    public static void invalidateAll(Storage storage) {
+        caches.values().forEach(NearCache::clear);
+        storage.publish(Config.CACHE_CHANNEL, INSTANCE_ID + SEPARATOR + ALL + SEPARATOR + ALL);
+    }
+
+    /**
+    * @Description: Drop the value changed by others in the remote hash, without publishing (they publish it)
+    * @Param: [field]
+    * @return: void
+    */
+    public void evict(String field) {
+        invalidate(field);
+    }
+
+    /**
+    * @Description: The prefix of the invalidation messages of this instance, followed by <hashKey>|<field>, for writers
+    * other than the gateways (e.g. scripts) publishing on behalf of this instance
+    * @Param: []
+    * @return: java.lang.String
+    */
+    public static String invalidationPrefix() {
+        return INSTANCE_ID + SEPARATOR;
+    }
+
+    /** Helper Func, drop the cached value of the field */
+    private synchronized void invalidate(String field) {
+        stamp++;
+        invalidations.incrementAndGet();
+        map.remove(field);
+    }
+
+    /** Helper Func, drop all cached values */
+    private synchronized void clear() {
+        stamp++;
+        map.clear();
+    }
+
+    /**
+    * @Description: Return hit/miss counters of all caches in this JVM
+    * @Param: []
+    * @return: java.lang.String
+    */
+    public static String statistics() {
+        StringBuilder sb = new StringBuilder();
+        for (NearCache cache : caches.values()) {
+            long hits = cache.hits.get();
+            long total = hits + cache.misses.get();
+            sb.append("+ ").append(cache.hashKey)
+                    .append(": size=").append(cache.size())
+                    .append(", hits=").append(hits)
+                    .append(", misses=").append(cache.misses.get())
+                    .append(", hit rate=").append(total == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / total))
+                    .append(", evictions=").append(cache.evictions.get())
+                    .append(", invalidations=").append(cache.invalidations.get())
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+
+    /** Helper Func, the number of cached values */
+    private synchronized int size() {
+        return map.size();
+    }
+
+    /** Helper Func, start listening to invalidations if it is not started yet */
+    private static synchronized void subscribe(Gateway<?> gateway) {
+        if (subscribed) {
+            return;
+        }
+        gateway.getStorage().subscribe(Config.CACHE_CHANNEL, new Invalidator());
+        subscribed = true;
+    }
+
+    /** Listener dropping the values written by other instances */
+    private static class Invalidator implements Storage.Listener {
+
+        /** Invalidations may have been missed while disconnected, so start from empty caches */
+        @Override
+        public void onSubscribe() {
+            caches.values().forEach(NearCache::clear);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            String[] parts = message.split("\\" + SEPARATOR, 3);
+            if (parts.length != 3 || parts[0].equals(INSTANCE_ID)) {
+                return;
+            }
+            if (parts[1].equals(ALL)) {
+                caches.values().forEach(NearCache::clear);
+                return;
+            }
+            NearCache cache = caches.get(parts[1]);
+            if (cache != null) {
+                cache.invalidate(parts[2]);
+            }
+        }
+    }
+}
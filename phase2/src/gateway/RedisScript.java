@@ -0,0 +1,350 @@
+package gateway;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import gateway.storage.Script;
+import gateway.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @program: group_0173
+ * @description: Scripts run inside the storage, so a check and the writes depending on it happen in one atomic
+ * round trip: event enrollment, and compare-and-set of a hash field (see HashGateway.mutate). Each script has a Lua
+ * source for Redis and the same steps in Java for MemoryStorage, the two must be kept in sync.
+ * @note: The enrollment scripts read the event json written by the event gateway and edit the json written by the
+ * user gateway ({"data":[{"CLASSNAME":..,"DATA":{..}}]}), and the rosters of the event (see RosterGateway and WaitListGateway). cjson
+ * encodes an empty table as {}, so empty attributes are turned back into [] before writing. Every write of a user
+ * increases the version of the field and publishes an invalidation for the near caches, the same way HashGateway does.
+ * Every change of the rosters also refreshes the eligibility of the event (see EligibilityGateway) and the counts of
+ * its summary (see SummaryGateway) from the rosters, in the same script.
+ * KEYS[1]: user hash, KEYS[2]: event hash, KEYS[3]: user version hash, KEYS[4]: event version hash,
+ * KEYS[5]: signed up roster (set) of the event, KEYS[6]: wait list (sorted set) of the event,
+ * KEYS[7..10]: eligible open, open regular, full and full regular sets, KEYS[11]: summary hash,
+ * ARGV[1]: invalidation channel, ARGV[2]: invalidation prefix
+ * @create: 2020-12-14 16:30
+ **/
+public enum RedisScript implements Script {
+
+    /**
+     * ARGV[3]: user id, ARGV[4]: event id.
+     * Return 0 if signed up, -1 if the event does not exist, -2 if the user is not an attendee, -3 if the event is for
+     * VIP only, -4 if the user has signed up already, -5 if the event is full.
+     */
+    ENROLL(
+            "local uid, eid = tonumber(ARGV[3]), tonumber(ARGV[4])\n" +
+            "local event = load(KEYS[2], eid)\n" +
+            "if not event then return -1 end\n" +
+            "local user = load(KEYS[1], uid)\n" +
+            "if not user or not ATTENDEES[user.CLASSNAME] then return -2 end\n" +
+            "if event.DATA.isVipEvent and user.CLASSNAME ~= 'entity.VipUser' then return -3 end\n" +
+            "if redis.call('SISMEMBER', KEYS[5], ARGV[3]) == 1 then return -4 end\n" +
+            "if redis.call('SCARD', KEYS[5]) >= event.DATA.capacity then return -5 end\n" +
+            "redis.call('SADD', KEYS[5], ARGV[3])\n" +
+            "table.insert(user.DATA.signedUpEvent, eid)\n" +
+            "save(KEYS[1], uid, user)\n" +
+            "refresh(event, eid)\n" +
+            "return 0\n") {
+        @Override
+        public Object apply(Storage storage, List<String> keys, List<String> args) {
+            int uid = Integer.parseInt(args.get(2)), eid = Integer.parseInt(args.get(3));
+            JsonObject event = load(storage, keys.get(1), eid);
+            if (event == null) {
+                return -1L;
+            }
+            JsonObject user = load(storage, keys.get(0), uid);
+            if (user == null || !ATTENDEES.contains(user.get("CLASSNAME").getAsString())) {
+                return -2L;
+            }
+            JsonObject e = event.getAsJsonObject("DATA");
+            if (e.get("isVipEvent").getAsBoolean() && !user.get("CLASSNAME").getAsString().equals("entity.VipUser")) {
+                return -3L;
+            }
+            if (storage.sismember(keys.get(4), args.get(2))) {
+                return -4L;
+            }
+            if (storage.scard(keys.get(4)) >= e.get("capacity").getAsInt()) {
+                return -5L;
+            }
+            storage.sadd(keys.get(4), args.get(2));
+            user.getAsJsonObject("DATA").getAsJsonArray("signedUpEvent").add(eid);
+            save(storage, keys, args, keys.get(0), uid, user);
+            refresh(storage, keys, event, eid);
+            return 0L;
+        }
+    },
+
+    /**
+     * ARGV[3]: user id, ARGV[4]: event id.
+     * Return {1, promoted user ids...} if the enrollment is cancelled, {0} if the user has not signed up.
+     */
+    CANCEL(
+            "local uid, eid = tonumber(ARGV[3]), tonumber(ARGV[4])\n" +
+            "local event = load(KEYS[2], eid)\n" +
+            "if not event or redis.call('SREM', KEYS[5], ARGV[3]) == 0 then return {0} end\n" +
+            "local user = load(KEYS[1], uid)\n" +
+            "if user then\n" +
+            "    remove(user.DATA.signedUpEvent, eid)\n" +
+            "    save(KEYS[1], uid, user)\n" +
+            "end\n" +
+            "local ret = {1}\n" +
+            "for _, promoted in ipairs(promoteAll(event, eid)) do table.insert(ret, promoted) end\n" +
+            "refresh(event, eid)\n" +
+            "return ret\n") {
+        @Override
+        public Object apply(Storage storage, List<String> keys, List<String> args) {
+            int uid = Integer.parseInt(args.get(2)), eid = Integer.parseInt(args.get(3));
+            List<Long> ret = new ArrayList<>();
+            JsonObject event = load(storage, keys.get(1), eid);
+            if (event == null || storage.srem(keys.get(4), args.get(2)) == 0) {
+                ret.add(0L);
+                return ret;
+            }
+            JsonObject user = load(storage, keys.get(0), uid);
+            if (user != null) {
+                remove(user.getAsJsonObject("DATA").getAsJsonArray("signedUpEvent"), eid);
+                save(storage, keys, args, keys.get(0), uid, user);
+            }
+            ret.add(1L);
+            ret.addAll(promoteAll(storage, keys, args, event, eid));
+            refresh(storage, keys, event, eid);
+            return ret;
+        }
+    },
+
+    /**
+     * ARGV[3]: event id.
+     * Move the first ranked users of the wait list to the event until it is full. Return the promoted user ids.
+     */
+    PROMOTE(
+            "local eid = tonumber(ARGV[3])\n" +
+            "local event = load(KEYS[2], eid)\n" +
+            "if not event then return {} end\n" +
+            "local ret = promoteAll(event, eid)\n" +
+            "refresh(event, eid)\n" +
+            "return ret\n") {
+        @Override
+        public Object apply(Storage storage, List<String> keys, List<String> args) {
+            int eid = Integer.parseInt(args.get(2));
+            JsonObject event = load(storage, keys.get(1), eid);
+            if (event == null) {
+                return new ArrayList<Long>();
+            }
+            List<Long> ret = promoteAll(storage, keys, args, event, eid);
+            refresh(storage, keys, event, eid);
+            return ret;
+        }
+    },
+
+    /**
+     * ARGV[3]: event id.
+     * Refresh the eligibility and the counts of the event from its rosters, after the rosters have been written
+     * directly. Return 1 if refreshed, 0 if the event does not exist.
+     */
+    REFRESH(
+            "local eid = tonumber(ARGV[3])\n" +
+            "local event = load(KEYS[2], eid)\n" +
+            "if not event then return 0 end\n" +
+            "refresh(event, eid)\n" +
+            "return 1\n") {
+        @Override
+        public Object apply(Storage storage, List<String> keys, List<String> args) {
+            int eid = Integer.parseInt(args.get(2));
+            JsonObject event = load(storage, keys.get(1), eid);
+            if (event == null) {
+                return 0L;
+            }
+            refresh(storage, keys, event, eid);
+            return 1L;
+        }
+    },
+
+    /**
+     * KEYS[1]: hash, KEYS[2]: version hash, ARGV[3]: field, ARGV[4]: expected version, ARGV[5]: value.
+     * Write the value only if the version of the field is still the expected one. Return 1 if written, 0 otherwise.
+     */
+    CAS(
+            "if (redis.call('HGET', KEYS[2], ARGV[3]) or '0') ~= ARGV[4] then return 0 end\n" +
+            "redis.call('HSET', KEYS[1], ARGV[3], ARGV[5])\n" +
+            "redis.call('HINCRBY', KEYS[2], ARGV[3], 1)\n" +
+            "redis.call('PUBLISH', ARGV[1], ARGV[2] .. KEYS[1] .. '|' .. ARGV[3])\n" +
+            "return 1\n") {
+        @Override
+        public Object apply(Storage storage, List<String> keys, List<String> args) {
+            String version = storage.hget(keys.get(1), args.get(2));
+            if (!(version != null ? version : "0").equals(args.get(3))) {
+                return 0L;
+            }
+            storage.hset(keys.get(0), args.get(2), args.get(4));
+            storage.hincrBy(keys.get(1), args.get(2), 1);
+            storage.publish(args.get(0), args.get(1) + keys.get(0) + "|" + args.get(2));
+            return 1L;
+        }
+    };
+
+    /** Helper functions shared by the enrollment scripts */
+    private static final String PRELUDE =
+            "local VERSIONS = {[KEYS[1]] = KEYS[3], [KEYS[2]] = KEYS[4]}\n" +
+            "local ATTENDEES = {['entity.Attendee'] = true, ['entity.VipUser'] = true, ['entity.Organizer'] = true}\n" +
+            "local function load(hash, id)\n" +
+            "    local raw = redis.call('HGET', hash, id)\n" +
+            "    if not raw then return nil end\n" +
+            "    return cjson.decode(raw).data[1]\n" +
+            "end\n" +
+            "local function save(hash, id, entry)\n" +
+            "    local raw = cjson.encode({data = {entry}})\n" +
+            "    raw = string.gsub(raw, '([,{]\"[%w_]+\"):{}', '%1:[]')\n" +
+            "    redis.call('HSET', hash, id, raw)\n" +
+            "    redis.call('HINCRBY', VERSIONS[hash], id, 1)\n" +
+            "    redis.call('PUBLISH', ARGV[1], ARGV[2] .. hash .. '|' .. id)\n" +
+            "end\n" +
+            "local function indexOf(list, value)\n" +
+            "    for i, v in ipairs(list) do\n" +
+            "        if v == value then return i end\n" +
+            "    end\n" +
+            "    return nil\n" +
+            "end\n" +
+            "local function remove(list, value)\n" +
+            "    local i = indexOf(list, value)\n" +
+            "    if i then table.remove(list, i) end\n" +
+            "end\n" +
+            "local function promoteAll(event, eid)\n" +
+            "    local ret = {}\n" +
+            "    while redis.call('SCARD', KEYS[5]) < event.DATA.capacity do\n" +
+            "        local uid = redis.call('ZRANGE', KEYS[6], 0, 0)[1]\n" +
+            "        if not uid then break end\n" +
+            "        redis.call('ZREM', KEYS[6], uid)\n" +
+            "        redis.call('SADD', KEYS[5], uid)\n" +
+            "        uid = tonumber(uid)\n" +
+            "        local user = load(KEYS[1], uid)\n" +
+            "        if user then\n" +
+            "            remove(user.DATA.myWaitList, eid)\n" +
+            "            table.insert(user.DATA.signedUpEvent, eid)\n" +
+            "            save(KEYS[1], uid, user)\n" +
+            "        end\n" +
+            "        table.insert(ret, uid)\n" +
+            "    end\n" +
+            "    return ret\n" +
+            "end\n" +
+            "local function refresh(event, eid)\n" +
+            "    local signed = redis.call('SCARD', KEYS[5])\n" +
+            "    local open = signed < event.DATA.capacity\n" +
+            "    local state, other = open and 7 or 9, open and 9 or 7\n" +
+            "    redis.call('SADD', KEYS[state], eid)\n" +
+            "    redis.call('SREM', KEYS[other], eid)\n" +
+            "    if event.DATA.isVipEvent then\n" +
+            "        redis.call('SREM', KEYS[state + 1], eid)\n" +
+            "    else\n" +
+            "        redis.call('SADD', KEYS[state + 1], eid)\n" +
+            "    end\n" +
+            "    redis.call('SREM', KEYS[other + 1], eid)\n" +
+            "    redis.call('HSET', KEYS[11], eid .. ':signed', signed)\n" +
+            "    redis.call('HSET', KEYS[11], eid .. ':wait', redis.call('ZCARD', KEYS[6]))\n" +
+            "end\n";
+
+    private static final Set<String> ATTENDEES =
+            new HashSet<>(Arrays.asList("entity.Attendee", "entity.VipUser", "entity.Organizer"));
+
+    private final String source;
+
+    RedisScript(String body) {
+        this.source = PRELUDE + body;
+    }
+
+    /**
+    * @Description: The Lua source of the script
+    * @Param: []
+    * @return: java.lang.String
+    */
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    /** Helpers of the Java implementations, same as the Lua ones in PRELUDE */
+    /** Helper Func, the entry {"CLASSNAME":..,"DATA":{..}} stored under the id, null if it does not exist */
+    private static JsonObject load(Storage storage, String hash, int id) {
+        String raw = storage.hget(hash, String.valueOf(id));
+        if (raw == null) {
+            return null;
+        }
+        return JsonParser.parseString(raw).getAsJsonObject().getAsJsonArray("data").get(0).getAsJsonObject();
+    }
+
+    /** Helper Func, write the entry back, increase its version and publish the invalidation */
+    private static void save(Storage storage, List<String> keys, List<String> args, String hash, int id, JsonObject entry) {
+        JsonArray data = new JsonArray();
+        data.add(entry);
+        JsonObject envelope = new JsonObject();
+        envelope.add("data", data);
+        storage.hset(hash, String.valueOf(id), envelope.toString());
+        storage.hincrBy(hash.equals(keys.get(0)) ? keys.get(2) : keys.get(3), String.valueOf(id), 1);
+        storage.publish(args.get(0), args.get(1) + hash + "|" + id);
+    }
+
+    /** Helper Func, the index of the id in the list, -1 if it is not in the list */
+    private static int indexOf(JsonArray list, int id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getAsInt() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Helper Func, remove the id from the list if it is in the list */
+    private static void remove(JsonArray list, int id) {
+        int i = indexOf(list, id);
+        if (i >= 0) {
+            list.remove(i);
+        }
+    }
+
+    /** Helper Func, write the eligibility of the event and the counts of its summary from its rosters */
+    private static void refresh(Storage storage, List<String> keys, JsonObject event, int eid) {
+        JsonObject e = event.getAsJsonObject("DATA");
+        String id = String.valueOf(eid);
+        long signed = storage.scard(keys.get(4));
+        boolean open = signed < e.get("capacity").getAsInt();
+        int state = open ? 6 : 8, other = open ? 8 : 6;
+        storage.sadd(keys.get(state), id);
+        storage.srem(keys.get(other), id);
+        if (e.get("isVipEvent").getAsBoolean()) {
+            storage.srem(keys.get(state + 1), id);
+        } else {
+            storage.sadd(keys.get(state + 1), id);
+        }
+        storage.srem(keys.get(other + 1), id);
+        storage.hset(keys.get(10), id + SummaryGateway.SIGNED_SUFFIX, String.valueOf(signed));
+        storage.hset(keys.get(10), id + SummaryGateway.WAIT_SUFFIX, String.valueOf(storage.zcard(keys.get(5))));
+    }
+
+    /** Helper Func, move the first ranked users of the wait list into the event until it is full */
+    private static List<Long> promoteAll(Storage storage, List<String> keys, List<String> args, JsonObject event, int eid) {
+        int capacity = event.getAsJsonObject("DATA").get("capacity").getAsInt();
+        List<Long> ret = new ArrayList<>();
+        while (storage.scard(keys.get(4)) < capacity) {
+            List<String> first = storage.zrange(keys.get(5), 0, 0);
+            if (first.isEmpty()) {
+                break;
+            }
+            String waiting = first.get(0);
+            storage.zrem(keys.get(5), waiting);
+            storage.sadd(keys.get(4), waiting);
+            int uid = Integer.parseInt(waiting);
+            JsonObject user = load(storage, keys.get(0), uid);
+            if (user != null) {
+                remove(user.getAsJsonObject("DATA").getAsJsonArray("myWaitList"), eid);
+                user.getAsJsonObject("DATA").getAsJsonArray("signedUpEvent").add(eid);
+                save(storage, keys, args, keys.get(0), uid, user);
+            }
+            ret.add((long) uid);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,280 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @program: group_0173
+ * @description: Gateway keeping the roster (the set of signed up user ids) of each event in database with type of
+ * set, apart from the event itself. Membership and head count are answered by SISMEMBER and SCARD, so they cost the
+ * same for an event with ten users and one with ten thousand.
+ * @note: The roster of an event is kept in the set <rosterKey>:<event id>, which is also edited by the enrollment
+ * scripts (see RedisScript).
+ * @create: 2020-12-17 10:40
+ **/
+public class RosterGateway extends Gateway<Integer> {
+
+    private String rosterKey;
+    /** The writes staged during a unit of work, by event id */
+    private Map<Integer, StagedRoster> staged;
+
+    /** The writes of one roster staged during a unit of work, applied in the order replace, removes, adds */
+    private static class StagedRoster {
+        /** The new roster if it has been replaced (or deleted), null otherwise */
+        Set<Integer> replaced;
+        final Set<Integer> removed = new HashSet<>();
+        final Set<Integer> added = new HashSet<>();
+
+        /** Whether the user is in the roster after the staged writes, null if it depends on the remote roster */
+        Boolean contains(int userId) {
+            if (added.contains(userId)) {
+                return true;
+            }
+            if (removed.contains(userId)) {
+                return false;
+            }
+            return replaced != null ? replaced.contains(userId) : null;
+        }
+
+        /** The roster after the staged writes, given the remote one */
+        Set<Integer> apply(Set<Integer> remote) {
+            Set<Integer> roster = new HashSet<>(replaced != null ? replaced : remote);
+            roster.removeAll(removed);
+            roster.addAll(added);
+            return roster;
+        }
+    }
+
+    /**
+    * @Description: Constructor
+    * @Param: [rosterKey]
+    * @Date: 2020-12-17
+    */
+    public RosterGateway(String rosterKey) {
+        super(Integer.class, false);
+        this.rosterKey = rosterKey;
+    }
+
+    /** Helper Func, the key of the set keeping the roster of the event */
+    static String keyOf(String rosterKey, int eventId) {
+        return rosterKey + ":" + eventId;
+    }
+
+    /**
+    * @Description: Get the roster of the event in ascending order, empty if it does not exist
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> get (int eventId) {
+        return sorted(applyStaged(eventId, toIds(getStorage().smembers(keyOf(this.rosterKey, eventId)))));
+    }
+
+    /**
+    * @Description: Get the rosters of the events in one round trip, in the order of the event ids
+    * @Param: [eventIds]
+    * @return: java.util.List<java.util.List<java.lang.Integer>>
+    * @Date: 2020-12-17
+    */
+    public List<List<Integer>> getAll (Collection<Integer> eventIds) {
+        List<String> keys = new ArrayList<>();
+        for (int eventId : eventIds) {
+            keys.add(keyOf(this.rosterKey, eventId));
+        }
+        List<Set<String>> sets = keys.isEmpty() ? new ArrayList<>() : getStorage().smembersAll(keys);
+        List<List<Integer>> rosters = new ArrayList<>();
+        int i = 0;
+        for (int eventId : eventIds) {
+            rosters.add(sorted(applyStaged(eventId, toIds(sets.get(i++)))));
+        }
+        return rosters;
+    }
+
+    /**
+    * @Description: Whether the user is in the roster of the event, by SISMEMBER without fetching the roster
+    * @Param: [eventId, userId]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean contains (int eventId, int userId) {
+        if (staged != null && staged.containsKey(eventId)) {
+            Boolean contains = staged.get(eventId).contains(userId);
+            if (contains != null) {
+                return contains;
+            }
+        }
+        return getStorage().sismember(keyOf(this.rosterKey, eventId), String.valueOf(userId));
+    }
+
+    /**
+    * @Description: Count the users in the roster of the event by SCARD. With staged writes for the event in the unit
+    * of work, the count is taken from get instead.
+    * @Param: [eventId]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int size (int eventId) {
+        if (staged != null && staged.containsKey(eventId)) {
+            return get(eventId).size();
+        }
+        return (int) getStorage().scard(keyOf(this.rosterKey, eventId));
+    }
+
+    /**
+    * @Description: Add the user to the roster of the event
+    * @Param: [eventId, userId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void add (int eventId, int userId) {
+        if (staged != null) {
+            StagedRoster roster = staged.computeIfAbsent(eventId, id -> new StagedRoster());
+            roster.removed.remove(userId);
+            roster.added.add(userId);
+            return;
+        }
+        getStorage().sadd(keyOf(this.rosterKey, eventId), String.valueOf(userId));
+    }
+
+    /**
+    * @Description: Remove the user from the roster of the event
+    * @Param: [eventId, userId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int eventId, int userId) {
+        if (staged != null) {
+            StagedRoster roster = staged.computeIfAbsent(eventId, id -> new StagedRoster());
+            roster.added.remove(userId);
+            roster.removed.add(userId);
+            return;
+        }
+        getStorage().srem(keyOf(this.rosterKey, eventId), String.valueOf(userId));
+    }
+
+    /**
+    * @Description: Replace the whole roster of the event
+    * @Param: [eventId, userIds]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void replace (int eventId, Collection<Integer> userIds) {
+        if (staged != null) {
+            StagedRoster roster = staged.computeIfAbsent(eventId, id -> new StagedRoster());
+            roster.replaced = new HashSet<>(userIds);
+            roster.removed.clear();
+            roster.added.clear();
+            return;
+        }
+        getStorage().atomically(batch -> write(batch, eventId, userIds));
+    }
+
+    /**
+    * @Description: Delete the roster of the event
+    * @Param: [eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void delete (int eventId) {
+        replace(eventId, new ArrayList<>());
+    }
+
+    /** Helper Func, queue the replacement of the roster into the batch */
+    private void write (Storage.Batch batch, int eventId, Collection<Integer> userIds) {
+        String key = keyOf(this.rosterKey, eventId);
+        batch.del(key);
+        if (!userIds.isEmpty()) {
+            batch.sadd(key, toValues(userIds));
+        }
+    }
+
+    /** Unit of work methods */
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new HashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.forEach((eventId, roster) -> {
+            String key = keyOf(this.rosterKey, eventId);
+            if (roster.replaced != null) {
+                write(batch, eventId, roster.replaced);
+            }
+            if (!roster.removed.isEmpty()) {
+                batch.srem(key, toValues(roster.removed));
+            }
+            if (!roster.added.isEmpty()) {
+                batch.sadd(key, toValues(roster.added));
+            }
+        });
+        staged.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && !staged.isEmpty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+
+    /** Helper Func, the roster after the writes staged for the event */
+    private Set<Integer> applyStaged (int eventId, Set<Integer> roster) {
+        return staged != null && staged.containsKey(eventId) ? staged.get(eventId).apply(roster) : roster;
+    }
+
+    /** Helper Func, the ids in ascending order */
+    private static List<Integer> sorted (Set<Integer> ids) {
+        List<Integer> list = new ArrayList<>(ids);
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Helper Func, the ids stored in the set */
+    private static Set<Integer> toIds (Set<String> values) {
+        Set<Integer> ids = new HashSet<>();
+        for (String value : values) {
+            ids.add(Integer.valueOf(value));
+        }
+        return ids;
+    }
+
+    /** Helper Func, the ids as members of the set */
+    private static String[] toValues (Collection<Integer> ids) {
+        String[] values = new String[ids.size()];
+        int i = 0;
+        for (int id : ids) {
+            values[i++] = String.valueOf(id);
+        }
+        return values;
+    }
+}
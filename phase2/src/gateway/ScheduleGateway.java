@@ -0,0 +1,168 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @program: group_0173
+ * @description: Gateway keeping the schedule of each owner (a room, a speaker..) in database: the ids of its events in
+ * two sorted sets, one ordered by start time and one by end time. Whether the owner is busy in a time window is then
+ * answered by two ZCOUNTs, O(log n) without fetching any event.
+ * @note: The schedule of an owner is kept in the sorted sets <scheduleKey>:<owner id> (by start) and
+ * <scheduleKey>:<owner id>:end (by end), scored as in TimeIndexGateway. An event overlaps [start, end) iff it starts
+ * before end and ends after start; as an event ending at or before start also starts before end, the overlapping
+ * events are count(starts before end) - count(ends at or before start).
+ * @create: 2020-12-17 10:40
+ **/
+public class ScheduleGateway extends Gateway<Integer> {
+
+    private String scheduleKey;
+    /** The writes staged during a unit of work, owner id -> event id -> [start, end] (null if removed) */
+    private Map<Integer, Map<Integer, LocalDateTime[]>> staged;
+
+    /**
+    * @Description: Constructor
+    * @Param: [scheduleKey]
+    * @Date: 2020-12-17
+    */
+    public ScheduleGateway(String scheduleKey) {
+        super(Integer.class, false);
+        this.scheduleKey = scheduleKey;
+    }
+
+    /** Helper Func, the key of the sorted set of the owner by start time */
+    private String startKeyOf(int ownerId) {
+        return this.scheduleKey + ":" + ownerId;
+    }
+
+    /** Helper Func, the key of the sorted set of the owner by end time */
+    private String endKeyOf(int ownerId) {
+        return this.scheduleKey + ":" + ownerId + ":end";
+    }
+
+    /**
+    * @Description: Put the event into the schedule of the owner, replacing its former times
+    * @Param: [ownerId, eventId, start, end]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void put (int ownerId, int eventId, LocalDateTime start, LocalDateTime end) {
+        if (staged != null) {
+            staged.computeIfAbsent(ownerId, id -> new HashMap<>()).put(eventId, new LocalDateTime[]{start, end});
+            return;
+        }
+        getStorage().atomically(batch -> write(batch, ownerId, eventId, start, end));
+    }
+
+    /**
+    * @Description: Remove the event from the schedule of the owner
+    * @Param: [ownerId, eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int ownerId, int eventId) {
+        if (staged != null) {
+            staged.computeIfAbsent(ownerId, id -> new HashMap<>()).put(eventId, null);
+            return;
+        }
+        getStorage().atomically(batch -> erase(batch, ownerId, eventId));
+    }
+
+    /**
+    * @Description: Count the events in the schedule of the owner overlapping the time window from start to end (end
+    * exclusive). Events touching the window at either end do not overlap it. The window must not end before it starts.
+    * @Param: [ownerId, start, end]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int countOverlapping (int ownerId, LocalDateTime start, LocalDateTime end) {
+        Storage storage = getStorage();
+        long count = storage.zcount(startKeyOf(ownerId), Double.NEGATIVE_INFINITY, Math.nextDown(TimeIndexGateway.scoreOf(end)))
+                - storage.zcount(endKeyOf(ownerId), Double.NEGATIVE_INFINITY, TimeIndexGateway.scoreOf(start));
+        if (staged != null && staged.containsKey(ownerId)) {
+            for (Map.Entry<Integer, LocalDateTime[]> entry : staged.get(ownerId).entrySet()) {
+                Double remoteStart = storage.zscore(startKeyOf(ownerId), String.valueOf(entry.getKey()));
+                Double remoteEnd = storage.zscore(endKeyOf(ownerId), String.valueOf(entry.getKey()));
+                if (remoteStart != null && remoteEnd != null && remoteStart < TimeIndexGateway.scoreOf(end)
+                        && remoteEnd > TimeIndexGateway.scoreOf(start)) {
+                    count--;
+                }
+                LocalDateTime[] times = entry.getValue();
+                if (times != null && times[0].isBefore(end) && times[1].isAfter(start)) {
+                    count++;
+                }
+            }
+        }
+        return (int) Math.max(count, 0);
+    }
+
+    /**
+    * @Description: Whether the owner has an event overlapping the time window from start to end, see countOverlapping
+    * @Param: [ownerId, start, end]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean isBusy (int ownerId, LocalDateTime start, LocalDateTime end) {
+        return countOverlapping(ownerId, start, end) > 0;
+    }
+
+    /** Helper Func, queue the write of the event into the schedule of the owner into the batch */
+    private void write (Storage.Batch batch, int ownerId, int eventId, LocalDateTime start, LocalDateTime end) {
+        batch.zadd(startKeyOf(ownerId), TimeIndexGateway.scoreOf(start), String.valueOf(eventId));
+        batch.zadd(endKeyOf(ownerId), TimeIndexGateway.scoreOf(end), String.valueOf(eventId));
+    }
+
+    /** Helper Func, queue the removal of the event from the schedule of the owner into the batch */
+    private void erase (Storage.Batch batch, int ownerId, int eventId) {
+        batch.zrem(startKeyOf(ownerId), String.valueOf(eventId));
+        batch.zrem(endKeyOf(ownerId), String.valueOf(eventId));
+    }
+
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new HashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.forEach((ownerId, events) -> events.forEach((eventId, times) -> {
+            if (times != null) {
+                write(batch, ownerId, eventId, times[0], times[1]);
+            } else {
+                erase(batch, ownerId, eventId);
+            }
+        }));
+        staged.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && !staged.isEmpty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+}
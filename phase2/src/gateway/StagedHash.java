@@ -0,0 +1,78 @@
+package gateway;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @program: group_0173
+ * @description: StagedHash holds the fields of one remote hash which have been read or written during a unit of work.
+ * Reads are answered from here so each field is loaded once, and writes stay here until the unit of work is committed.
+ * A field mapped to null is known to be absent (or deleted) in this unit of work.
+ * @create: 2020-12-13 15:26
+ **/
+class StagedHash {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Set<String> dirty = new LinkedHashSet<>();
+
+    /** Whether the field has been read or written in this unit of work */
+    boolean has(String field) {
+        return values.containsKey(field);
+    }
+
+    /** The staged value of the field, null if it is absent */
+    String get(String field) {
+        return values.get(field);
+    }
+
+    /** Remember the value loaded from the remote hash */
+    void load(String field, String value) {
+        if (!dirty.contains(field)) {
+            values.put(field, value);
+        }
+    }
+
+    /** Stage a write of the field */
+    void write(String field, String value) {
+        values.put(field, value);
+        dirty.add(field);
+    }
+
+    /** Stage a delete of the field */
+    void remove(String field) {
+        write(field, null);
+    }
+
+    /** Mark the staged writes as sent, the values are still answered from here */
+    void clean() {
+        dirty.clear();
+    }
+
+    /** Drop the field, so it is loaded from the remote hash again */
+    void forget(String field) {
+        values.remove(field);
+        dirty.remove(field);
+    }
+
+    /** Whether any write has been staged */
+    boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /** All staged values, including the loaded ones */
+    Map<String, String> values() {
+        return values;
+    }
+
+    /** The staged writes in order, a null value means the field is deleted */
+    Map<String, String> writes() {
+        Map<String, String> writes = new LinkedHashMap<>();
+        for (String field : dirty) {
+            writes.put(field, values.get(field));
+        }
+        return writes;
+    }
+}
@@ -0,0 +1,175 @@
+package gateway;
+
+import gateway.bean.EventSummary;
+import gateway.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @program: group_0173
+ * @description: Gateway maintaining the summary of each event (see EventSummary) in database with type of hash,
+ * event id -> summary json, and <event id>:signed / <event id>:wait -> the sizes of the rosters.
+ * @note: A projection, so it has no id key, versions or near cache: the summaries are written in the same batch as
+ * the event they are built from. The counts are written by the scripts changing the rosters (see RedisScript), so
+ * they never lag the rosters.
+ * @create: 2020-12-17 10:40
+ **/
+public class SummaryGateway extends Gateway<EventSummary> {
+
+    /** Suffixes of the fields keeping the counts of an event, the scripts write the same fields */
+    static final String SIGNED_SUFFIX = ":signed";
+    static final String WAIT_SUFFIX = ":wait";
+
+    private String summaryKey;
+    private StagedHash staged;
+
+    /**
+    * @Description: Constructor
+    * @Param: [summaryKey]
+    * @Date: 2020-12-17
+    */
+    public SummaryGateway(String summaryKey) {
+        super(EventSummary.class, false);
+        this.summaryKey = summaryKey;
+    }
+
+    /**
+    * @Description: Write the summary of the event, without its counts
+    * @Param: [summary]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void put (EventSummary summary) {
+        String field = String.valueOf(summary.getEventId());
+        if (staged != null) {
+            staged.write(field, serialize(summary));
+            return;
+        }
+        getStorage().hset(this.summaryKey, field, serialize(summary));
+    }
+
+    /**
+    * @Description: Write the counts of the event, for a write of the whole rosters in the same batch
+    * @Param: [eventId, signedUpCount, waitListCount]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void putCounts (int eventId, int signedUpCount, int waitListCount) {
+        if (staged != null) {
+            staged.write(eventId + SIGNED_SUFFIX, String.valueOf(signedUpCount));
+            staged.write(eventId + WAIT_SUFFIX, String.valueOf(waitListCount));
+            return;
+        }
+        getStorage().atomically(batch -> {
+            batch.hset(this.summaryKey, eventId + SIGNED_SUFFIX, String.valueOf(signedUpCount));
+            batch.hset(this.summaryKey, eventId + WAIT_SUFFIX, String.valueOf(waitListCount));
+        });
+    }
+
+    /**
+    * @Description: Remove the summary of the event and its counts
+    * @Param: [eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int eventId) {
+        String[] fields = {String.valueOf(eventId), eventId + SIGNED_SUFFIX, eventId + WAIT_SUFFIX};
+        if (staged != null) {
+            for (String field : fields) {
+                staged.remove(field);
+            }
+            return;
+        }
+        getStorage().atomically(batch -> {
+            for (String field : fields) {
+                batch.hdel(this.summaryKey, field);
+            }
+        });
+    }
+
+    /**
+    * @Description: Get the summaries of the events with their counts in one HMGET round trip, in the order of the ids.
+    * Null for the ids that do not exist.
+    * @Param: [ids]
+    * @return: java.util.List<gateway.bean.EventSummary>
+    * @Date: 2020-12-17
+    */
+    public List<EventSummary> getAll (Collection<Integer> ids) {
+        List<String> fields = new ArrayList<>();
+        for (int id : ids) {
+            fields.add(String.valueOf(id));
+            fields.add(id + SIGNED_SUFFIX);
+            fields.add(id + WAIT_SUFFIX);
+        }
+        List<EventSummary> list = new ArrayList<>();
+        if (fields.isEmpty()) {
+            return list;
+        }
+        List<String> values = new ArrayList<>(getStorage().hmget(this.summaryKey, fields.toArray(new String[0])));
+        for (int i = 0; i < fields.size(); i++) {
+            if (staged != null && staged.has(fields.get(i))) {
+                values.set(i, staged.get(fields.get(i)));
+            }
+        }
+        for (int i = 0; i < fields.size(); i += 3) {
+            EventSummary summary = values.get(i) != null ? deserialize(values.get(i)) : null;
+            if (summary != null) {
+                summary.setCounts(countOf(values.get(i + 1)), countOf(values.get(i + 2)));
+            }
+            list.add(summary);
+        }
+        return list;
+    }
+
+    /** Helper Func, the count read from the hash, 0 if it is missing */
+    private static int countOf(String value) {
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new StagedHash();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.writes().forEach((field, value) -> {
+            if (value != null) {
+                batch.hset(this.summaryKey, field, value);
+            } else {
+                batch.hdel(this.summaryKey, field);
+            }
+        });
+        staged.clean();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && staged.isDirty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+}
@@ -0,0 +1,151 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: group_0173
+ * @description: Gateway maintaining a secondary index (id ordered by time) in database with type of sorted set, so the
+ * ids within a time window are found in O(log n + k) without fetching the values.
+ * @note: The score of an id is its time in seconds since the epoch, taken as UTC as LocalDateTime has no zone.
+ * @create: 2020-12-17 10:40
+ **/
+public class TimeIndexGateway extends Gateway<Integer> {
+
+    private String indexKey;
+    /** The writes staged during a unit of work, id -> score (null if removed) */
+    private StagedHash staged;
+
+    /**
+    * @Description: Constructor
+    * @Param: [indexKey]
+    * @Date: 2020-12-17
+    */
+    public TimeIndexGateway(String indexKey) {
+        super(Integer.class, false);
+        this.indexKey = indexKey;
+    }
+
+    /** Helper Func, the score of the time in the index */
+    static double scoreOf(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+    * @Description: Index the id at the given time, replacing its former time
+    * @Param: [id, time]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void put (int id, LocalDateTime time) {
+        if (staged != null) {
+            staged.write(String.valueOf(id), String.valueOf(scoreOf(time)));
+            return;
+        }
+        getStorage().zadd(this.indexKey, scoreOf(time), String.valueOf(id));
+    }
+
+    /**
+    * @Description: Remove the id from the index
+    * @Param: [id]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int id) {
+        if (staged != null) {
+            staged.remove(String.valueOf(id));
+            return;
+        }
+        getStorage().zrem(this.indexKey, String.valueOf(id));
+    }
+
+    /**
+    * @Description: Get the ids indexed at a time from the given time to the given time (both inclusive), ordered by
+    * time. A null bound leaves that side of the window open.
+    * @Param: [from, to]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> range (LocalDateTime from, LocalDateTime to) {
+        double min = from == null ? Double.NEGATIVE_INFINITY : scoreOf(from);
+        double max = to == null ? Double.POSITIVE_INFINITY : scoreOf(to);
+        List<Integer> ids = new ArrayList<>();
+        if (staged == null || !staged.isDirty()) {
+            for (String id : getStorage().zrangeByScore(this.indexKey, min, max)) {
+                ids.add(Integer.valueOf(id));
+            }
+            return ids;
+        }
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<String, Double> entry : getStorage().zrangeByScoreWithScores(this.indexKey, min, max)) {
+            scores.put(entry.getKey(), entry.getValue());
+        }
+        staged.writes().forEach((id, score) -> {
+            if (score != null && Double.parseDouble(score) >= min && Double.parseDouble(score) <= max) {
+                scores.put(id, Double.valueOf(score));
+            } else {
+                scores.remove(id);
+            }
+        });
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort((a, b) -> {
+            int c = Double.compare(a.getValue(), b.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        for (Map.Entry<String, Double> entry : entries) {
+            ids.add(Integer.valueOf(entry.getKey()));
+        }
+        return ids;
+    }
+
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new StagedHash();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.writes().forEach((id, score) -> {
+            if (score != null) {
+                batch.zadd(this.indexKey, Double.parseDouble(score), id);
+            } else {
+                batch.zrem(this.indexKey, id);
+            }
+        });
+        staged.clean();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && staged.isDirty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+}
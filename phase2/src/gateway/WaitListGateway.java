@@ -0,0 +1,319 @@
+package gateway;
+
+import gateway.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * @program: group_0173
+ * @description: Gateway keeping the wait list of each event in database with type of sorted set, apart from the event
+ * itself. Each user is ranked by (priority tier, enqueue sequence), so a VIP user is queued after the other VIP users
+ * and before everyone else by one ZADD, and rank, removal and the first in line are single O(log n) commands.
+ * @note: The wait list of an event is kept in the sorted set <waitListKey>:<event id>, which is also edited by the
+ * enrollment scripts (see RedisScript). The score is tier * TIER_SIZE + sequence, the sequence is taken from the
+ * counter <sequenceKey> shared by all wait lists.
+ * @create: 2020-12-17 10:40
+ **/
+public class WaitListGateway extends Gateway<Integer> {
+
+    /** Room for the sequences of one tier, small enough to keep the scores exact in a double */
+    private static final long TIER_SIZE = 1L << 40;
+
+    private String waitListKey;
+    private String sequenceKey;
+    /** The writes staged during a unit of work, by event id */
+    private Map<Integer, StagedWaitList> staged;
+
+    /** The writes of one wait list staged during a unit of work, applied in the order replace, removes, adds */
+    private static class StagedWaitList {
+        /** The scores of the new wait list if it has been replaced (or deleted), null otherwise */
+        Map<Integer, Double> replaced;
+        final Set<Integer> removed = new HashSet<>();
+        final Map<Integer, Double> added = new LinkedHashMap<>();
+
+        /** Whether the user is in the wait list after the staged writes, null if it depends on the remote one */
+        Boolean contains(int userId) {
+            if (added.containsKey(userId)) {
+                return true;
+            }
+            if (removed.contains(userId)) {
+                return false;
+            }
+            return replaced != null ? replaced.containsKey(userId) : null;
+        }
+
+        /** The scores of the wait list after the staged writes, given the remote ones */
+        Map<Integer, Double> apply(Map<Integer, Double> remote) {
+            Map<Integer, Double> scores = new HashMap<>(replaced != null ? replaced : remote);
+            scores.keySet().removeAll(removed);
+            scores.putAll(added);
+            return scores;
+        }
+    }
+
+    /**
+    * @Description: Constructor
+    * @Param: [waitListKey, sequenceKey]
+    * @Date: 2020-12-17
+    */
+    public WaitListGateway(String waitListKey, String sequenceKey) {
+        super(Integer.class, false);
+        this.waitListKey = waitListKey;
+        this.sequenceKey = sequenceKey;
+    }
+
+    /** Helper Func, the key of the sorted set keeping the wait list of the event */
+    static String keyOf(String waitListKey, int eventId) {
+        return waitListKey + ":" + eventId;
+    }
+
+    /**
+    * @Description: Get the wait list of the event in order, empty if it does not exist
+    * @Param: [eventId]
+    * @return: java.util.List<java.lang.Integer>
+    * @Date: 2020-12-17
+    */
+    public List<Integer> get (int eventId) {
+        String key = keyOf(this.waitListKey, eventId);
+        if (staged == null || !staged.containsKey(eventId)) {
+            return toIds(getStorage().zrange(key, 0, -1));
+        }
+        Map<Integer, Double> remote = new HashMap<>();
+        for (Map.Entry<String, Double> entry : getStorage().zrangeWithScores(key, 0, -1)) {
+            remote.put(Integer.valueOf(entry.getKey()), entry.getValue());
+        }
+        List<Map.Entry<Integer, Double>> entries = new ArrayList<>(staged.get(eventId).apply(remote).entrySet());
+        entries.sort((a, b) -> {
+            int c = Double.compare(a.getValue(), b.getValue());
+            return c != 0 ? c : String.valueOf(a.getKey()).compareTo(String.valueOf(b.getKey()));
+        });
+        List<Integer> waitList = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : entries) {
+            waitList.add(entry.getKey());
+        }
+        return waitList;
+    }
+
+    /**
+    * @Description: Get the wait lists of the events in one round trip, in the order of the event ids
+    * @Param: [eventIds]
+    * @return: java.util.List<java.util.List<java.lang.Integer>>
+    * @Date: 2020-12-17
+    */
+    public List<List<Integer>> getAll (Collection<Integer> eventIds) {
+        List<String> keys = new ArrayList<>();
+        for (int eventId : eventIds) {
+            keys.add(keyOf(this.waitListKey, eventId));
+        }
+        List<List<String>> lists = keys.isEmpty() ? new ArrayList<>() : getStorage().zrangeAll(keys);
+        List<List<Integer>> waitLists = new ArrayList<>();
+        int i = 0;
+        for (int eventId : eventIds) {
+            List<String> waitList = lists.get(i++);
+            waitLists.add(staged != null && staged.containsKey(eventId) ? get(eventId) : toIds(waitList));
+        }
+        return waitLists;
+    }
+
+    /**
+    * @Description: Whether the user is in the wait list of the event, by ZSCORE without fetching the wait list
+    * @Param: [eventId, userId]
+    * @return: boolean
+    * @Date: 2020-12-17
+    */
+    public boolean contains (int eventId, int userId) {
+        if (staged != null && staged.containsKey(eventId)) {
+            Boolean contains = staged.get(eventId).contains(userId);
+            if (contains != null) {
+                return contains;
+            }
+        }
+        return getStorage().zscore(keyOf(this.waitListKey, eventId), String.valueOf(userId)) != null;
+    }
+
+    /**
+    * @Description: Get the 0-based rank of the user in the wait list of the event by ZRANK, null if the user is not in
+    * the wait list. With staged writes for the event in the unit of work, the rank is taken from get instead.
+    * @Param: [eventId, userId]
+    * @return: java.lang.Integer
+    * @Date: 2020-12-17
+    */
+    public Integer rank (int eventId, int userId) {
+        if (staged != null && staged.containsKey(eventId)) {
+            int rank = get(eventId).indexOf(userId);
+            return rank >= 0 ? rank : null;
+        }
+        Long rank = getStorage().zrank(keyOf(this.waitListKey, eventId), String.valueOf(userId));
+        return rank != null ? rank.intValue() : null;
+    }
+
+    /**
+    * @Description: Get the first user in the wait list of the event, null if it is empty
+    * @Param: [eventId]
+    * @return: java.lang.Integer
+    * @Date: 2020-12-17
+    */
+    public Integer first (int eventId) {
+        List<Integer> first = staged != null && staged.containsKey(eventId) ? get(eventId)
+                : toIds(getStorage().zrange(keyOf(this.waitListKey, eventId), 0, 0));
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    /**
+    * @Description: Count the users in the wait list of the event by ZCARD. With staged writes for the event in the
+    * unit of work, the count is taken from get instead.
+    * @Param: [eventId]
+    * @return: int
+    * @Date: 2020-12-17
+    */
+    public int size (int eventId) {
+        if (staged != null && staged.containsKey(eventId)) {
+            return get(eventId).size();
+        }
+        return (int) getStorage().zcard(keyOf(this.waitListKey, eventId));
+    }
+
+    /**
+    * @Description: Queue the user in the wait list of the event, after the users of the same tier. Users with priority
+    * are queued before all users without.
+    * @Param: [eventId, userId, priority]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void add (int eventId, int userId, boolean priority) {
+        double score = scoreOf(priority, getStorage().incrBy(this.sequenceKey, 1));
+        if (staged != null) {
+            StagedWaitList waitList = staged.computeIfAbsent(eventId, id -> new StagedWaitList());
+            waitList.removed.remove(userId);
+            waitList.added.put(userId, score);
+            return;
+        }
+        getStorage().zadd(keyOf(this.waitListKey, eventId), score, String.valueOf(userId));
+    }
+
+    /**
+    * @Description: Remove the user from the wait list of the event
+    * @Param: [eventId, userId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void remove (int eventId, int userId) {
+        if (staged != null) {
+            StagedWaitList waitList = staged.computeIfAbsent(eventId, id -> new StagedWaitList());
+            waitList.added.remove(userId);
+            waitList.removed.add(userId);
+            return;
+        }
+        getStorage().zrem(keyOf(this.waitListKey, eventId), String.valueOf(userId));
+    }
+
+    /**
+    * @Description: Replace the whole wait list of the event. The users are queued in the given order within their tier.
+    * @Param: [eventId, userIds, priority]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void replace (int eventId, List<Integer> userIds, Predicate<Integer> priority) {
+        Map<Integer, Double> scores = new LinkedHashMap<>();
+        long sequence = userIds.isEmpty() ? 0 : getStorage().incrBy(this.sequenceKey, userIds.size()) - userIds.size();
+        for (int userId : userIds) {
+            scores.put(userId, scoreOf(priority.test(userId), ++sequence));
+        }
+        if (staged != null) {
+            StagedWaitList waitList = staged.computeIfAbsent(eventId, id -> new StagedWaitList());
+            waitList.replaced = scores;
+            waitList.removed.clear();
+            waitList.added.clear();
+            return;
+        }
+        getStorage().atomically(batch -> write(batch, eventId, scores));
+    }
+
+    /**
+    * @Description: Delete the wait list of the event
+    * @Param: [eventId]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void delete (int eventId) {
+        replace(eventId, new ArrayList<>(), userId -> false);
+    }
+
+    /** Helper Func, the score of a user queued in the tier with the sequence */
+    private static double scoreOf (boolean priority, long sequence) {
+        return (priority ? 0 : TIER_SIZE) + sequence;
+    }
+
+    /** Helper Func, queue the replacement of the wait list into the batch */
+    private void write (Storage.Batch batch, int eventId, Map<Integer, Double> scores) {
+        String key = keyOf(this.waitListKey, eventId);
+        batch.del(key);
+        scores.forEach((userId, score) -> batch.zadd(key, score, String.valueOf(userId)));
+    }
+
+    /** Unit of work methods */
+    /**
+    * @Description: Start staging writes, see GatewayFacade.beginUnitOfWork
+    * @Param: []
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void begin () {
+        staged = new HashMap<>();
+    }
+
+    /**
+    * @Description: Queue the staged writes into the batch, the unit of work keeps staging until discard
+    * @Param: [batch]
+    * @return: void
+    * @Date: 2020-12-17
+    */
+    public void flush (Storage.Batch batch) {
+        staged.forEach((eventId, waitList) -> {
+            String key = keyOf(this.waitListKey, eventId);
+            if (waitList.replaced != null) {
+                write(batch, eventId, waitList.replaced);
+            }
+            for (int userId : waitList.removed) {
+                batch.zrem(key, String.valueOf(userId));
+            }
+            waitList.added.forEach((userId, score) -> batch.zadd(key, score, String.valueOf(userId)));
+        });
+        staged.clear();
+    }
+
+    /**
+    * @Description: Whether there are staged writes in the unit of work
+    * @Param: []
+    * @return: boolean
+    */
+    public boolean isDirty () {
+        return staged != null && !staged.isEmpty();
+    }
+
+    /**
+    * @Description: Drop the staged writes and stop staging
+    * @Param: []
+    * @return: void
+    */
+    public void discard () {
+        staged = null;
+    }
+
+    /** Helper Func, the ids stored in the sorted set */
+    private static List<Integer> toIds (List<String> values) {
+        List<Integer> ids = new ArrayList<>();
+        for (String value : values) {
+            ids.add(Integer.valueOf(value));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,98 @@
+package gateway.bean;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @program: group_0173
+ * @description: Compact summary of an event for the schedule views, denormalized from the event, its room, its
+ * speakers and its rosters, so a view needs no other lookup.
+ * @note: Written by GatewayFacade on every write of the event, never changed by the views. The counts are kept apart
+ * and updated on the server with the rosters (see SummaryGateway), so they are not part of the json.
+ * @create: 2020-12-17 10:40
+ **/
+public class EventSummary {
+
+    private String type;
+    private int eventId;
+    private String title;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private String roomNum;
+    private boolean vipEvent;
+    /** Null if the event has no speakers */
+    private List<String> speakerNames;
+    private int capacity;
+    private transient int signedUpCount;
+    private transient int waitListCount;
+
+    public EventSummary(String type, int eventId, String title, LocalDateTime startTime, LocalDateTime endTime,
+                        String roomNum, boolean vipEvent, List<String> speakerNames, int capacity) {
+        this.type = type;
+        this.eventId = eventId;
+        this.title = title;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.roomNum = roomNum;
+        this.vipEvent = vipEvent;
+        this.speakerNames = speakerNames;
+        this.capacity = capacity;
+    }
+
+    /** The simple class name of the event */
+    public String getType() {
+        return type;
+    }
+
+    public int getEventId() {
+        return eventId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public Duration getDuration() {
+        return Duration.between(startTime, endTime);
+    }
+
+    /** The number of the room, null if the room does not exist */
+    public String getRoomNum() {
+        return roomNum;
+    }
+
+    public boolean isVipEvent() {
+        return vipEvent;
+    }
+
+    public List<String> getSpeakerNames() {
+        return speakerNames;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSignedUpCount() {
+        return signedUpCount;
+    }
+
+    public int getWaitListCount() {
+        return waitListCount;
+    }
+
+    /** Set the counts read apart from the summary, see SummaryGateway */
+    public void setCounts(int signedUpCount, int waitListCount) {
+        this.signedUpCount = signedUpCount;
+        this.waitListCount = waitListCount;
+    }
+}
@@ -0,0 +1,328 @@
+package gateway.codec;
+
+import entity.Attendee;
+import entity.Message;
+import entity.Organizer;
+import entity.Room;
+import entity.Speaker;
+import entity.User;
+import entity.VipUser;
+import entity.event.Event;
+import entity.event.MultiSpeakerEvent;
+import entity.event.OneSpeakerEvent;
+import entity.event.PanelDiscussion;
+import entity.event.Party;
+import entity.event.Talk;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @program: group_0173
+ * @description: Codec writing the entities in a compact binary format, several times smaller and faster than the
+ * json. Values not starting with the version byte are read as json, so old data is migrated as it is rewritten.
+ * @note: Version 1: [version][type tag][fields of the type], where ints are zigzag varints, strings are
+ * [varint length + 1][UTF-8] (0 for null), int lists are [varint size][varints], and times are epoch minutes in UTC
+ * (times are entered to the minute, see EventManager.getTimeFormatter). The bytes are kept one per char (ISO-8859-1),
+ * since the storage keeps strings.
+ * @create: 2020-12-15 20:40
+ **/
+public class BinaryCodec<T> implements Codec<T> {
+
+    private static final char VERSION = 1;
+
+    /** Type tags, never reuse a tag of a removed type */
+    private static final byte ATTENDEE = 1;
+    private static final byte ORGANIZER = 2;
+    private static final byte VIP_USER = 3;
+    private static final byte SPEAKER = 4;
+    private static final byte TALK = 5;
+    private static final byte PANEL_DISCUSSION = 6;
+    private static final byte PARTY = 7;
+    private static final byte ROOM = 8;
+    private static final byte MESSAGE = 9;
+
+    private final Codec<T> legacy;
+
+    /**
+    * @Description: Constructor
+    * @Param: [legacy] the codec reading the values written before the binary codec
+    */
+    public BinaryCodec(Codec<T> legacy) {
+        this.legacy = legacy;
+    }
+
+    @Override
+    public String encode(T obj) {
+        Writer out = new Writer();
+        out.put(VERSION);
+        if (obj instanceof User) {
+            writeUser(out, (User) obj);
+        } else if (obj instanceof Event) {
+            writeEvent(out, (Event) obj);
+        } else if (obj instanceof Room) {
+            Room room = (Room) obj;
+            out.put(ROOM);
+            out.putString(room.getRoomNum());
+            out.putInt(room.getRid());
+            out.putInt(room.getCapacity());
+        } else if (obj instanceof Message) {
+            Message message = (Message) obj;
+            out.put(MESSAGE);
+            out.putString(message.getTitle());
+            out.putString(message.getInfo());
+            out.putInt(message.getSenderId());
+            out.putInt(message.getReceiverId());
+        } else {
+            throw new IllegalArgumentException("Gateway: No binary format for " + obj.getClass().getName());
+        }
+        return out.toString();
+    }
+
+    @Override
+    public T decode(String data) {
+        if (data.isEmpty() || data.charAt(0) >= ' ') { // json starts with a printable char
+            return legacy.decode(data);
+        } else if (data.charAt(0) != VERSION) {
+            throw new IllegalArgumentException("Gateway: Unknown binary format version " + (int) data.charAt(0));
+        }
+        Reader in = new Reader(data);
+        byte tag = in.get();
+        Object obj;
+        switch (tag) {
+            case ATTENDEE:
+            case ORGANIZER:
+            case VIP_USER:
+            case SPEAKER:
+                obj = readUser(in, tag);
+                break;
+            case TALK:
+            case PANEL_DISCUSSION:
+            case PARTY:
+                obj = readEvent(in, tag);
+                break;
+            case ROOM:
+                obj = new Room(in.getString(), in.getInt(), in.getInt());
+                break;
+            case MESSAGE:
+                obj = new Message(in.getString(), in.getString(), in.getInt(), in.getInt());
+                break;
+            default:
+                throw new IllegalArgumentException("Gateway: Unknown type tag " + tag);
+        }
+        @SuppressWarnings("unchecked")
+        T ret = (T) obj;
+        return ret;
+    }
+
+    /** Helper Func, write [tag][uid][username][password][lists of the type] */
+    private static void writeUser(Writer out, User user) {
+        if (user instanceof Organizer) {
+            out.put(ORGANIZER);
+        } else if (user instanceof VipUser) {
+            out.put(VIP_USER);
+        } else if (user instanceof Attendee) {
+            out.put(ATTENDEE);
+        } else if (user instanceof Speaker) {
+            out.put(SPEAKER);
+        } else {
+            throw new IllegalArgumentException("Gateway: No binary format for " + user.getClass().getName());
+        }
+        out.putInt(user.getUserId());
+        out.putString(user.getUserName());
+        out.putString(user.getPassword());
+        if (user instanceof Attendee) {
+            out.putInts(((Attendee) user).getSignedUpEventList());
+            out.putInts(((Attendee) user).getMyWaitList());
+        }
+        if (user instanceof Organizer) {
+            out.putInts(((Organizer) user).getCreatedEventList());
+        } else if (user instanceof Speaker) {
+            out.putInts(((Speaker) user).get_GivingEventList());
+        }
+    }
+
+    /** Helper Func, read the user written by writeUser */
+    private static User readUser(Reader in, byte tag) {
+        int uid = in.getInt();
+        String username = in.getString();
+        String password = in.getString();
+        if (tag == SPEAKER) {
+            Speaker speaker = new Speaker(uid, password, username);
+            speaker.get_GivingEventList().addAll(in.getInts());
+            return speaker;
+        }
+        Attendee attendee = tag == ORGANIZER ? new Organizer(uid, password, username)
+                : tag == VIP_USER ? new VipUser(uid, password, username) : new Attendee(uid, password, username);
+        attendee.getSignedUpEventList().addAll(in.getInts());
+        attendee.getMyWaitList().addAll(in.getInts());
+        if (tag == ORGANIZER) {
+            ((Organizer) attendee).getCreatedEventList().addAll(in.getInts());
+        }
+        return attendee;
+    }
+
+    /** Helper Func, write [tag][id][start][end - start][title][room][capacity][vip][rosters][speakers of the type] */
+    private static void writeEvent(Writer out, Event event) {
+        if (event instanceof Talk) {
+            out.put(TALK);
+        } else if (event instanceof PanelDiscussion) {
+            out.put(PANEL_DISCUSSION);
+        } else if (event instanceof Party) {
+            out.put(PARTY);
+        } else {
+            throw new IllegalArgumentException("Gateway: No binary format for " + event.getClass().getName());
+        }
+        long start = epochMinute(event.getStartTime());
+        out.putInt(event.getEventId());
+        out.putLong(start);
+        out.putLong(epochMinute(event.getEndTime()) - start);
+        out.putString(event.getTitle());
+        out.putInt(event.getRoomId());
+        out.putInt(event.getCapacity());
+        out.put((byte) (event.isVipEvent() ? 1 : 0));
+        out.putInts(event.getSignedUpUserList());
+        out.putInts(event.getWaitList());
+        if (event instanceof OneSpeakerEvent) {
+            out.putInt(((OneSpeakerEvent) event).getSpeakerId());
+        } else if (event instanceof MultiSpeakerEvent) {
+            out.putInts(((MultiSpeakerEvent) event).getSpeakerList());
+        }
+    }
+
+    /** Helper Func, read the event written by writeEvent */
+    private static Event readEvent(Reader in, byte tag) {
+        int eventId = in.getInt();
+        long start = in.getLong();
+        LocalDateTime startTime = fromEpochMinute(start);
+        LocalDateTime endTime = fromEpochMinute(start + in.getLong());
+        String title = in.getString();
+        int roomId = in.getInt();
+        int capacity = in.getInt();
+        Event event = tag == TALK ? new Talk(startTime, endTime, eventId, title, roomId, capacity)
+                : tag == PANEL_DISCUSSION ? new PanelDiscussion(startTime, endTime, eventId, title, roomId, capacity)
+                : new Party(startTime, endTime, eventId, title, roomId, capacity);
+        event.setVipEvent(in.get() == 1);
+        event.getSignedUpUserList().addAll(in.getInts());
+        event.getWaitList().addAll(in.getInts());
+        if (tag == TALK) {
+            ((Talk) event).setSpeaker(in.getInt());
+        } else if (tag == PANEL_DISCUSSION) {
+            ((PanelDiscussion) event).setSpeaker(in.getInts());
+        }
+        return event;
+    }
+
+    /** Helper Func, minutes since 1970-01-01T00:00 */
+    private static long epochMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /** Helper Func, the time of the epoch minute */
+    private static LocalDateTime fromEpochMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    /** Growable buffer writing the format */
+    private static class Writer {
+        private byte[] bytes = new byte[64];
+        private int size = 0;
+
+        void put(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void putLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                put((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            put((int) zigzag);
+        }
+
+        void putInt(int value) {
+            putLong(value);
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putLong(utf8.length + 1L);
+            for (byte b : utf8) {
+                put(b);
+            }
+        }
+
+        void putInts(List<Integer> values) {
+            putLong(values.size());
+            for (int value : values) {
+                putLong(value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, size, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /** Reader of the format, starting after the version byte */
+    private static class Reader {
+        private final byte[] bytes;
+        private int position = 1;
+
+        Reader(String data) {
+            this.bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        byte get() {
+            return bytes[position++];
+        }
+
+        long getLong() {
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        int getInt() {
+            return (int) getLong();
+        }
+
+        String getString() {
+            int length = (int) getLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        ArrayList<Integer> getInts() {
+            int size = (int) getLong();
+            ArrayList<Integer> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(getInt());
+            }
+            return values;
+        }
+    }
+}
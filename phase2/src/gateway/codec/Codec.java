@@ -0,0 +1,45 @@
+package gateway.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * @program: group_0173
+ * @description: Codec turns the objects of a gateway into the values kept in the storage and back. Each gateway has
+ * its own codec, see Config for the codec of each gateway.
+ * @create: 2020-12-15 20:40
+ **/
+public interface Codec<T> {
+
+    String JSON = "json";
+    String BINARY = "binary";
+
+    /**
+    * @Description: Encode the object into a value
+    * @Param: [obj]
+    * @return: java.lang.String
+    */
+    String encode(T obj);
+
+    /**
+    * @Description: Decode the value into an object
+    * @Param: [data]
+    * @return: T
+    */
+    T decode(String data);
+
+    /**
+    * @Description: The codec with given name ("json" or "binary") for the type. Both read json values, so the data
+    * written before a gateway switched to the binary codec is still readable.
+    * @Param: [name, type, genericEnable]
+    * @return: gateway.codec.Codec<T>
+    */
+    static <T> Codec<T> of(String name, Type type, boolean genericEnable) {
+        JsonCodec<T> json = new JsonCodec<>(type, genericEnable);
+        if (name.equals(BINARY)) {
+            return new BinaryCodec<>(json);
+        } else if (name.equals(JSON)) {
+            return json;
+        }
+        throw new IllegalArgumentException("Gateway: Unknown codec " + name);
+    }
+}
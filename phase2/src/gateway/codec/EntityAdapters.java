@@ -0,0 +1,392 @@
+package gateway.codec;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import entity.Attendee;
+import entity.Message;
+import entity.Organizer;
+import entity.Room;
+import entity.Speaker;
+import entity.User;
+import entity.VipUser;
+import entity.event.Event;
+import entity.event.MultiSpeakerEvent;
+import entity.event.OneSpeakerEvent;
+import entity.event.PanelDiscussion;
+import entity.event.Party;
+import entity.event.Talk;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: group_0173
+ * @description: Streaming Gson adapters of the entity classes, registered by class name (the CLASSNAME tag written by
+ * GenericAdapter). They read and write the same json as Gson does by reflection, field by field without building a
+ * tree or looking up classes.
+ * @note: Fields are written in the order of Gson (sub class first). They are read in any order, since the enrollment
+ * scripts re-encode the json with cjson, which does not keep the order and may write an empty list as {}.
+ * @create: 2020-12-15 22:10
+ **/
+public class EntityAdapters {
+
+    private static final Map<String, TypeAdapter<?>> BY_CLASSNAME = new HashMap<>();
+    private static final Map<Class<?>, TypeAdapter<?>> BY_CLASS = new HashMap<>();
+
+    static {
+        register(Attendee.class, new UserAdapter(Attendee::new));
+        register(VipUser.class, new UserAdapter(VipUser::new));
+        register(Organizer.class, new UserAdapter(Organizer::new));
+        register(Speaker.class, new UserAdapter(Speaker::new));
+        register(Talk.class, new EventAdapter(Talk::new));
+        register(PanelDiscussion.class, new EventAdapter(PanelDiscussion::new));
+        register(Party.class, new EventAdapter(Party::new));
+        register(Room.class, new RoomAdapter());
+        register(Message.class, new MessageAdapter());
+    }
+
+    private EntityAdapters() {
+    }
+
+    /** Helper Func, register the adapter of the class under its class name */
+    private static <T> void register(Class<? extends T> klass, TypeAdapter<T> adapter) {
+        BY_CLASSNAME.put(klass.getName(), adapter);
+        BY_CLASS.put(klass, adapter);
+    }
+
+    /**
+    * @Description: The adapter of the class with given name, null if it is not registered
+    * @Param: [className]
+    * @return: com.google.gson.TypeAdapter<T>
+    */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeAdapter<T> of(String className) {
+        return (TypeAdapter<T>) BY_CLASSNAME.get(className);
+    }
+
+    /**
+    * @Description: The adapter of the class, null if it is not registered
+    * @Param: [klass]
+    * @return: com.google.gson.TypeAdapter<T>
+    */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeAdapter<T> of(Class<?> klass) {
+        return (TypeAdapter<T>) BY_CLASS.get(klass);
+    }
+
+    /** Constructor shared by the user classes */
+    private interface UserConstructor {
+        User create(int uid, String password, String name);
+    }
+
+    /** Constructor shared by the event classes */
+    private interface EventConstructor {
+        Event create(LocalDateTime startTime, LocalDateTime endTime, int eventId, String title, int roomId, int capacity);
+    }
+
+    /** Users: Attendee, VipUser, Organizer and Speaker */
+    private static class UserAdapter extends TypeAdapter<User> {
+        private final UserConstructor constructor;
+
+        UserAdapter(UserConstructor constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            out.beginObject();
+            if (user instanceof Organizer) {
+                writeInts(out.name("createdEventList"), ((Organizer) user).getCreatedEventList());
+            }
+            if (user instanceof Attendee) {
+                writeInts(out.name("signedUpEvent"), ((Attendee) user).getSignedUpEventList());
+                writeInts(out.name("myWaitList"), ((Attendee) user).getMyWaitList());
+            } else if (user instanceof Speaker) {
+                writeInts(out.name("givingEventList"), ((Speaker) user).get_GivingEventList());
+            }
+            out.name("uid").value(user.getUserId());
+            out.name("username").value(user.getUserName());
+            out.name("password").value(user.getPassword());
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            int uid = 0;
+            String username = null, password = null;
+            List<Integer> signedUpEvent = null, myWaitList = null, createdEventList = null, givingEventList = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uid": uid = in.nextInt(); break;
+                    case "username": username = readString(in); break;
+                    case "password": password = readString(in); break;
+                    case "signedUpEvent": signedUpEvent = readInts(in); break;
+                    case "myWaitList": myWaitList = readInts(in); break;
+                    case "createdEventList": createdEventList = readInts(in); break;
+                    case "givingEventList": givingEventList = readInts(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            User user = constructor.create(uid, password, username);
+            if (user instanceof Attendee) {
+                addAll(((Attendee) user).getSignedUpEventList(), signedUpEvent);
+                addAll(((Attendee) user).getMyWaitList(), myWaitList);
+            }
+            if (user instanceof Organizer) {
+                addAll(((Organizer) user).getCreatedEventList(), createdEventList);
+            } else if (user instanceof Speaker) {
+                addAll(((Speaker) user).get_GivingEventList(), givingEventList);
+            }
+            return user;
+        }
+    }
+
+    /** Events: Talk, PanelDiscussion and Party */
+    private static class EventAdapter extends TypeAdapter<Event> {
+        private final EventConstructor constructor;
+
+        EventAdapter(EventConstructor constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public void write(JsonWriter out, Event event) throws IOException {
+            out.beginObject();
+            if (event instanceof OneSpeakerEvent) {
+                out.name("speakerId").value(((OneSpeakerEvent) event).getSpeakerId());
+            } else if (event instanceof MultiSpeakerEvent) {
+                writeInts(out.name("speakerList"), ((MultiSpeakerEvent) event).getSpeakerList());
+            }
+            out.name("eventId").value(event.getEventId());
+            writeTime(out.name("startTime"), event.getStartTime());
+            writeTime(out.name("endTime"), event.getEndTime());
+            out.name("duration").beginObject()
+                    .name("seconds").value(event.getDuration().getSeconds())
+                    .name("nanos").value(event.getDuration().getNano())
+                    .endObject();
+            out.name("title").value(event.getTitle());
+            out.name("roomId").value(event.getRoomId());
+            out.name("capacity").value(event.getCapacity());
+            out.name("isVipEvent").value(event.isVipEvent());
+            writeInts(out.name("signedUserList"), event.getSignedUpUserList());
+            writeInts(out.name("waitList"), event.getWaitList());
+            out.endObject();
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            int eventId = 0, roomId = 0, capacity = 0, speakerId = 0;
+            LocalDateTime startTime = null, endTime = null;
+            String title = null;
+            boolean isVipEvent = false;
+            List<Integer> signedUserList = null, waitList = null, speakerList = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "eventId": eventId = in.nextInt(); break;
+                    case "startTime": startTime = readTime(in); break;
+                    case "endTime": endTime = readTime(in); break;
+                    case "title": title = readString(in); break;
+                    case "roomId": roomId = in.nextInt(); break;
+                    case "capacity": capacity = in.nextInt(); break;
+                    case "isVipEvent": isVipEvent = in.nextBoolean(); break;
+                    case "signedUserList": signedUserList = readInts(in); break;
+                    case "waitList": waitList = readInts(in); break;
+                    case "speakerId": speakerId = in.nextInt(); break;
+                    case "speakerList": speakerList = readInts(in); break;
+                    default: in.skipValue(); // duration is computed from the times
+                }
+            }
+            in.endObject();
+            Event event = constructor.create(startTime, endTime, eventId, title, roomId, capacity);
+            event.setVipEvent(isVipEvent);
+            addAll(event.getSignedUpUserList(), signedUserList);
+            addAll(event.getWaitList(), waitList);
+            if (event instanceof OneSpeakerEvent) {
+                ((OneSpeakerEvent) event).setSpeaker(speakerId);
+            } else if (event instanceof MultiSpeakerEvent) {
+                addAll(((MultiSpeakerEvent) event).getSpeakerList(), speakerList);
+            }
+            return event;
+        }
+    }
+
+    /** Room */
+    private static class RoomAdapter extends TypeAdapter<Room> {
+        @Override
+        public void write(JsonWriter out, Room room) throws IOException {
+            out.beginObject();
+            out.name("roomNum").value(room.getRoomNum());
+            out.name("rid").value(room.getRid());
+            out.name("capacity").value(room.getCapacity());
+            out.endObject();
+        }
+
+        @Override
+        public Room read(JsonReader in) throws IOException {
+            String roomNum = null;
+            int rid = 0, capacity = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "roomNum": roomNum = readString(in); break;
+                    case "rid": rid = in.nextInt(); break;
+                    case "capacity": capacity = in.nextInt(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Room(roomNum, rid, capacity);
+        }
+    }
+
+    /** Message */
+    private static class MessageAdapter extends TypeAdapter<Message> {
+        @Override
+        public void write(JsonWriter out, Message message) throws IOException {
+            out.beginObject();
+            out.name("content").value(message.getInfo());
+            out.name("senderId").value(message.getSenderId());
+            out.name("receiverId").value(message.getReceiverId());
+            out.name("title").value(message.getTitle());
+            out.endObject();
+        }
+
+        @Override
+        public Message read(JsonReader in) throws IOException {
+            String content = null, title = null;
+            int senderId = 0, receiverId = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "content": content = readString(in); break;
+                    case "senderId": senderId = in.nextInt(); break;
+                    case "receiverId": receiverId = in.nextInt(); break;
+                    case "title": title = readString(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Message(title, content, senderId, receiverId);
+        }
+    }
+
+    /** Helpers of the adapters */
+    /** Helper Func, read a string or null */
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /** Helper Func, write the ids as an array */
+    private static void writeInts(JsonWriter out, List<Integer> values) throws IOException {
+        out.beginArray();
+        for (int value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    /** Helper Func, read an array of ids, null if it is null. An empty object is read as an empty array (cjson). */
+    private static List<Integer> readInts(JsonReader in) throws IOException {
+        List<Integer> values = new ArrayList<>();
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BEGIN_OBJECT:
+                in.beginObject();
+                in.endObject();
+                return values;
+            default:
+                in.beginArray();
+                while (in.hasNext()) {
+                    values.add(in.nextInt());
+                }
+                in.endArray();
+                return values;
+        }
+    }
+
+    /** Helper Func, add the values if there are */
+    private static void addAll(List<Integer> list, List<Integer> values) {
+        if (values != null) {
+            list.addAll(values);
+        }
+    }
+
+    /** Helper Func, write the time the way Gson does, {"date":{..},"time":{..}} */
+    private static void writeTime(JsonWriter out, LocalDateTime time) throws IOException {
+        if (time == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("date").beginObject()
+                .name("year").value(time.getYear())
+                .name("month").value(time.getMonthValue())
+                .name("day").value(time.getDayOfMonth())
+                .endObject();
+        out.name("time").beginObject()
+                .name("hour").value(time.getHour())
+                .name("minute").value(time.getMinute())
+                .name("second").value(time.getSecond())
+                .name("nano").value(time.getNano())
+                .endObject();
+        out.endObject();
+    }
+
+    /** Helper Func, read the time written by writeTime */
+    private static LocalDateTime readTime(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int[] date = new int[3];
+        int[] time = new int[4];
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("date")) {
+                readFields(in, date, "year", "month", "day");
+            } else if (name.equals("time")) {
+                readFields(in, time, "hour", "minute", "second", "nano");
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return LocalDateTime.of(LocalDate.of(date[0], date[1], date[2]), LocalTime.of(time[0], time[1], time[2], time[3]));
+    }
+
+    /** Helper Func, read the int fields of an object into the array, in the order of the names */
+    private static void readFields(JsonReader in, int[] values, String... names) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int i = 0;
+            while (i < names.length && !names[i].equals(name)) {
+                i++;
+            }
+            if (i < names.length) {
+                values[i] = in.nextInt();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+}
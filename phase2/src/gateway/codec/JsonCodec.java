@@ -0,0 +1,148 @@
+package gateway.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import gateway.GenericAdapter;
+import gateway.Serializer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+
+/**
+ * @program: group_0173
+ * @description: Codec writing json. With genericEnable, the class of the object is kept in the json
+ * ({"data":[{"CLASSNAME":..,"DATA":{..}}]}, see GenericAdapter and Serializer), for the types with sub classes
+ * (User, Event).
+ * @note: The entity classes are written and read by the streaming adapters in EntityAdapters, other classes by Gson
+ * with reflection. Both write the same json.
+ * @create: 2020-12-15 20:40
+ **/
+public class JsonCodec<T> implements Codec<T> {
+
+    private static final String DATA = "data";
+    private static final String CLASSNAME = "CLASSNAME";
+    private static final String CLASS_DATA = "DATA";
+
+    private final boolean genericEnable;
+    private final Gson gson;
+    private final Type type;
+    /** The adapter of the type if it is an entity class, only used without genericEnable */
+    private final TypeAdapter<T> adapter;
+
+    /**
+    * @Description: Constructor
+    * @Param: [type, genericEnable]
+    */
+    public JsonCodec(Type type, boolean genericEnable) {
+        this.type = type;
+        this.genericEnable = genericEnable;
+        if (genericEnable) {
+            this.gson = new GsonBuilder().registerTypeAdapter(type, new GenericAdapter()).serializeNulls().create();
+        } else {
+            this.gson = new GsonBuilder().serializeNulls().create();
+        }
+        this.adapter = type instanceof Class ? EntityAdapters.of((Class<?>) type) : null;
+    }
+
+    /**
+    * @Description: serialize the given data with its type
+    * @Param: [obj]
+    * @return: java.lang.String
+    */
+    @Override
+    public String encode(T obj) {
+        TypeAdapter<Object> entityAdapter = obj == null ? null : EntityAdapters.of(obj.getClass());
+        if (genericEnable && entityAdapter == null) {
+            return new Serializer().serialize(obj, gson, type);
+        } else if (!genericEnable && adapter == null) {
+            return gson.toJson(obj);
+        }
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = gson.newJsonWriter(out);
+            writer.setHtmlSafe(true); // as Gson.toJson does
+            if (genericEnable) {
+                writer.beginObject().name(DATA).beginArray().beginObject();
+                writer.name(CLASSNAME).value(obj.getClass().getName());
+                entityAdapter.write(writer.name(CLASS_DATA), obj);
+                writer.endObject().endArray().endObject();
+            } else {
+                adapter.write(writer, obj);
+            }
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+    * @Description: deserialize the given data
+    * @Param: [data]
+    */
+    @Override
+    public T decode(String data) {
+        try {
+            Object obj;
+            if (!genericEnable) {
+                obj = adapter != null ? adapter.fromJson(data) : gson.fromJson(data, type);
+            } else {
+                obj = decodeEnvelope(data);
+                if (obj == null) {
+                    obj = new Serializer().deserialize(data, gson, type);
+                }
+            }
+            @SuppressWarnings("unchecked")
+            T ret = (T) obj;
+            return ret;
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /** Helper Func, read {"data":[{"CLASSNAME":..,"DATA":{..}}]} with the adapter of the class. Return null if the
+     * class has no adapter (or there is no DATA), to be read by Serializer instead. */
+    private Object decodeEnvelope(String data) throws IOException {
+        JsonReader reader = gson.newJsonReader(new StringReader(data));
+        reader.beginObject();
+        while (!reader.nextName().equals(DATA)) {
+            reader.skipValue();
+        }
+        reader.beginArray();
+        reader.beginObject();
+        String className = null;
+        JsonElement early = null; // DATA before CLASSNAME, as the order is not kept by cjson
+        Object obj = null;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(CLASSNAME)) {
+                className = reader.nextString();
+            } else if (name.equals(CLASS_DATA) && className != null) {
+                TypeAdapter<?> entityAdapter = EntityAdapters.of(className);
+                if (entityAdapter == null) {
+                    return null;
+                }
+                obj = entityAdapter.read(reader);
+            } else if (name.equals(CLASS_DATA)) {
+                early = JsonParser.parseReader(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        if (early != null) {
+            TypeAdapter<?> entityAdapter = EntityAdapters.of(className);
+            if (entityAdapter == null) {
+                return null;
+            }
+            obj = entityAdapter.fromJsonTree(early);
+        }
+        return obj;
+    }
+}
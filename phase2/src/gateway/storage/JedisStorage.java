@@ -0,0 +1,436 @@
+package gateway.storage;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @program: group_0173
+ * @description: Storage backed by a Redis server, each primitive is one command on a connection of the Jedis pool.
+ * @create: 2020-12-15 10:45
+ **/
+public class JedisStorage implements Storage {
+
+    private final JedisPool jedisPool;
+    /** SHA1 of the scripts loaded into the server */
+    private final Map<Script, String> shas = new ConcurrentHashMap<>();
+
+    /**
+    * @Description: Constructor, establish the Jedis pool
+    * @Param: [url, port, password]
+    */
+    public JedisStorage(String url, int port, String password) {
+        jedisPool = new JedisPool(new JedisPoolConfig(), url, port, 10000, password);
+        shutDownHook(); // ShutdownHook added
+        System.out.println("Gateway: " + jedisPool.toString() + " has been Established");
+    }
+
+    /**
+    * @Description: Setup a shutdown hook for close the jedis pool before termination of this program
+    * @Param: []
+    * @return: void
+    */
+    private void shutDownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            jedisPool.destroy();
+            System.out.println("Gateway: Jedis Pool has been terminated");
+        }));
+        System.out.println("Gateway: ShutdownHook has been Added");
+    }
+
+    /** Helper Func, run the command on a connection of the pool */
+    private <R> R call(Function<Jedis, R> command) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return command.apply(jedis);
+        }
+    }
+
+    @Override
+    public String type(String key) {
+        return call(jedis -> jedis.type(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return call(jedis -> jedis.exists(key));
+    }
+
+    @Override
+    public void del(String... keys) {
+        call(jedis -> jedis.del(keys));
+    }
+
+    @Override
+    public Set<String> keys(String pattern) {
+        return call(jedis -> jedis.keys(pattern));
+    }
+
+    @Override
+    public String get(String key) {
+        return call(jedis -> jedis.get(key));
+    }
+
+    @Override
+    public boolean setnx(String key, String value) {
+        return call(jedis -> jedis.setnx(key, value)) == 1;
+    }
+
+    @Override
+    public long incrBy(String key, long delta) {
+        return call(jedis -> jedis.incrBy(key, delta));
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return call(jedis -> jedis.hget(key, field));
+    }
+
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        return call(jedis -> jedis.hmget(key, fields));
+    }
+
+    @Override
+    public ScanPage hscan(String key, String cursor, int count) {
+        return call(jedis -> {
+            ScanResult<Map.Entry<String, String>> page = jedis.hscan(key, cursor, new ScanParams().count(count));
+            return new ScanPage(page.getStringCursor(), page.getResult());
+        });
+    }
+
+    @Override
+    public Set<String> hkeys(String key) {
+        return call(jedis -> jedis.hkeys(key));
+    }
+
+    @Override
+    public long hlen(String key) {
+        return call(jedis -> jedis.hlen(key));
+    }
+
+    @Override
+    public boolean hexists(String key, String field) {
+        return call(jedis -> jedis.hexists(key, field));
+    }
+
+    @Override
+    public void hset(String key, String field, String value) {
+        call(jedis -> jedis.hset(key, field, value));
+    }
+
+    @Override
+    public void hmset(String key, Map<String, String> map) {
+        call(jedis -> jedis.hmset(key, map));
+    }
+
+    @Override
+    public void hdel(String key, String field) {
+        call(jedis -> jedis.hdel(key, field));
+    }
+
+    @Override
+    public long hincrBy(String key, String field, long delta) {
+        return call(jedis -> jedis.hincrBy(key, field, delta));
+    }
+
+    @Override
+    public void lpush(String key, String... values) {
+        call(jedis -> jedis.lpush(key, values));
+    }
+
+    @Override
+    public void rpush(String key, String... values) {
+        call(jedis -> jedis.rpush(key, values));
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        return call(jedis -> jedis.lrange(key, start, end));
+    }
+
+    @Override
+    public long sadd(String key, String... members) {
+        return call(jedis -> jedis.sadd(key, members));
+    }
+
+    @Override
+    public long srem(String key, String... members) {
+        return call(jedis -> jedis.srem(key, members));
+    }
+
+    @Override
+    public boolean sismember(String key, String member) {
+        return call(jedis -> jedis.sismember(key, member));
+    }
+
+    @Override
+    public long scard(String key) {
+        return call(jedis -> jedis.scard(key));
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return call(jedis -> jedis.smembers(key));
+    }
+
+    @Override
+    public List<Set<String>> smembersAll(List<String> keys) {
+        return call(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Set<String>>> responses = new ArrayList<>();
+            for (String key : keys) {
+                responses.add(pipeline.smembers(key));
+            }
+            pipeline.sync();
+            List<Set<String>> sets = new ArrayList<>();
+            for (Response<Set<String>> response : responses) {
+                sets.add(response.get());
+            }
+            return sets;
+        });
+    }
+
+    @Override
+    public boolean zadd(String key, double score, String member) {
+        return call(jedis -> jedis.zadd(key, score, member)) == 1;
+    }
+
+    @Override
+    public long zrem(String key, String... members) {
+        return call(jedis -> jedis.zrem(key, members));
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        return call(jedis -> jedis.zscore(key, member));
+    }
+
+    @Override
+    public Long zrank(String key, String member) {
+        return call(jedis -> jedis.zrank(key, member));
+    }
+
+    @Override
+    public long zcard(String key) {
+        return call(jedis -> jedis.zcard(key));
+    }
+
+    @Override
+    public long zcount(String key, double min, double max) {
+        return call(jedis -> jedis.zcount(key, min, max));
+    }
+
+    @Override
+    public List<String> zrange(String key, long start, long end) {
+        return call(jedis -> new ArrayList<>(jedis.zrange(key, start, end)));
+    }
+
+    @Override
+    public List<Map.Entry<String, Double>> zrangeWithScores(String key, long start, long end) {
+        return call(jedis -> {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>();
+            for (Tuple tuple : jedis.zrangeWithScores(key, start, end)) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(tuple.getElement(), tuple.getScore()));
+            }
+            return entries;
+        });
+    }
+
+    @Override
+    public List<String> zrangeByScore(String key, double min, double max) {
+        return call(jedis -> new ArrayList<>(jedis.zrangeByScore(key, min, max)));
+    }
+
+    @Override
+    public List<Map.Entry<String, Double>> zrangeByScoreWithScores(String key, double min, double max) {
+        return call(jedis -> {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>();
+            for (Tuple tuple : jedis.zrangeByScoreWithScores(key, min, max)) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(tuple.getElement(), tuple.getScore()));
+            }
+            return entries;
+        });
+    }
+
+    @Override
+    public List<List<String>> zrangeAll(List<String> keys) {
+        return call(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Set<String>>> responses = new ArrayList<>();
+            for (String key : keys) {
+                responses.add(pipeline.zrange(key, 0, -1));
+            }
+            pipeline.sync();
+            List<List<String>> lists = new ArrayList<>();
+            for (Response<Set<String>> response : responses) {
+                lists.add(new ArrayList<>(response.get()));
+            }
+            return lists;
+        });
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        call(jedis -> jedis.publish(channel, message));
+    }
+
+    /**
+    * @Description: Start a daemon thread holding the subscription, which reconnects every second after a disconnection
+    * @Param: [channel, listener]
+    * @return: void
+    */
+    @Override
+    public void subscribe(String channel, Listener listener) {
+        Thread subscriber = new Thread(() -> {
+            while (true) {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.subscribe(new JedisPubSub() {
+                        @Override
+                        public void onSubscribe(String channel, int subscribedChannels) {
+                            listener.onSubscribe();
+                        }
+
+                        @Override
+                        public void onMessage(String channel, String message) {
+                            listener.onMessage(message);
+                        }
+                    }, channel);
+                } catch (Exception e) {
+                    System.err.println("Gateway: Subscriber of " + channel + " disconnected");
+                }
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "subscriber-" + channel);
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+    * @Description: Queue the writes into one MULTI/EXEC transaction
+    * @Param: [writes]
+    * @return: void
+    */
+    @Override
+    public void atomically(Consumer<Batch> writes) {
+        call(jedis -> {
+            Transaction transaction = jedis.multi();
+            writes.accept(new Batch() {
+                @Override
+                public void del(String... keys) {
+                    transaction.del(keys);
+                }
+
+                @Override
+                public void hset(String key, String field, String value) {
+                    transaction.hset(key, field, value);
+                }
+
+                @Override
+                public void hdel(String key, String field) {
+                    transaction.hdel(key, field);
+                }
+
+                @Override
+                public void hincrBy(String key, String field, long delta) {
+                    transaction.hincrBy(key, field, delta);
+                }
+
+                @Override
+                public void lpush(String key, String... values) {
+                    transaction.lpush(key, values);
+                }
+
+                @Override
+                public void rpush(String key, String... values) {
+                    transaction.rpush(key, values);
+                }
+
+                @Override
+                public void sadd(String key, String... members) {
+                    transaction.sadd(key, members);
+                }
+
+                @Override
+                public void srem(String key, String... members) {
+                    transaction.srem(key, members);
+                }
+
+                @Override
+                public void zadd(String key, double score, String member) {
+                    transaction.zadd(key, score, member);
+                }
+
+                @Override
+                public void zrem(String key, String... members) {
+                    transaction.zrem(key, members);
+                }
+
+                @Override
+                public void publish(String channel, String message) {
+                    transaction.publish(channel, message);
+                }
+            });
+            return transaction.exec();
+        });
+    }
+
+    @Override
+    public void load(Script... scripts) {
+        call(jedis -> {
+            for (Script script : scripts) {
+                shas.put(script, jedis.scriptLoad(script.getSource()));
+            }
+            return null;
+        });
+    }
+
+    /**
+    * @Description: Run the script by its SHA1, and load it again if the server has lost it (e.g. restarted)
+    * @Param: [script, keys, args]
+    * @return: java.lang.Object
+    */
+    @Override
+    public Object eval(Script script, List<String> keys, List<String> args) {
+        return call(jedis -> {
+            String sha = shas.get(script);
+            if (sha != null) {
+                try {
+                    return jedis.evalsha(sha, keys, args);
+                } catch (JedisDataException e) {
+                    if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                        throw e;
+                    }
+                }
+            }
+            sha = jedis.scriptLoad(script.getSource());
+            shas.put(script, sha);
+            return jedis.evalsha(sha, keys, args);
+        });
+    }
+
+    @Override
+    public boolean ping() {
+        return call(jedis -> jedis.ping().equals("PONG"));
+    }
+}
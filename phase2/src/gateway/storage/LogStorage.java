@@ -0,0 +1,680 @@
+package gateway.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * @program: group_0173
+ * @description: Storage persisting the data into memory-mapped, append-only segment files, for single node deployments
+ * without a Redis server. Every write appends a record to the active segment, and the maps of MemoryStorage keep the
+ * position of each value instead of the value, so reads decode it straight from the mapped buffer.
+ * @note: Record: [int payload length][int CRC32 of payload][byte op][int key length][key][int field length][field]
+ * [int value length][value], a length of -1 means null, a payload length of 0 marks the end of the segment.
+ * - Writes return once their records have been forced to disk by a background thread; the writes arriving while it
+ * is forcing are forced together by the next round (group commit).
+ * - The writes of a batch or script are enclosed in BEGIN/COMMIT records, an unfinished batch is dropped on restart,
+ * and the records of a batch which throws are cut off the same way.
+ * - When the log has grown to twice its size after the last compaction, a background thread rewrites the live values
+ * into one snapshot segment starting with a RESET record, renames it into place and deletes the older segments. The
+ * writes go on meanwhile, into a segment ordered after the snapshot.
+ * - On restart the segments are scanned in order to rebuild the positions, the values are not decoded.
+ * @create: 2020-12-15 16:10
+ **/
+public class LogStorage extends MemoryStorage {
+
+    private static final byte BEGIN = -1;
+    private static final byte COMMIT = -2;
+    private static final byte RESET = -3;
+    private static final int HEADER = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+    private final int segmentSize;
+    /** All segments in order, the last one is the active one */
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private int nextSegmentId = 0;
+    /** Whether a batch is running, whether its BEGIN record has been written, and where */
+    private boolean inBatch = false;
+    private boolean batchStarted = false;
+    private Segment beginSegment;
+    private int beginPosition;
+
+    /** Bytes appended and bytes forced to disk since start, and the segments appended to since the last force */
+    private final Object durability = new Object();
+    private long appended = 0;
+    private long durable = 0;
+    private final Set<Segment> unforced = new LinkedHashSet<>();
+
+    /** Size of the log, and its size after the last compaction */
+    private final Object compaction = new Object();
+    private boolean compactionRequested = false;
+    private volatile long logSize = 0;
+    private long compactedSize = 0;
+
+    /** One segment file mapped into memory */
+    private static class Segment {
+        final int id;
+        Path path;
+        final MappedByteBuffer buffer;
+        int position = 0;
+
+        Segment(int id, Path path, int size) throws IOException {
+            this.id = id;
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+    }
+
+    /** Position of a value in a segment, kept in the maps in place of the value */
+    private static class Pointer {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Pointer(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /** The bytes of the value, without copying them out of the mapped buffer */
+        ByteBuffer slice() {
+            ByteBuffer bytes = segment.buffer.duplicate();
+            bytes.position(offset);
+            bytes.limit(offset + length);
+            return bytes;
+        }
+    }
+
+    /**
+    * @Description: Constructor, open the segments in the directory (created if needed) and rebuild the index
+    * @Param: [dir, segmentSize]
+    */
+    public LogStorage(File dir, int segmentSize) {
+        this.dir = dir.toPath();
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(this.dir);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Gateway: Fail to open the log in " + dir, e);
+        }
+        startDaemon("log-flusher", this::flushLoop);
+        startDaemon("log-compactor", this::compactLoop);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> read(() -> {
+            segments.forEach(segment -> segment.buffer.force());
+            return null;
+        })));
+    }
+
+    /** Helper Func, start a daemon thread */
+    private static void startDaemon(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Hooks of MemoryStorage */
+    @Override
+    Object store(Op op, String key, String field, String value) {
+        return append((byte) op.ordinal(), key, field, value);
+    }
+
+    @Override
+    void erase(Op op, String key, String field) {
+        append((byte) op.ordinal(), key, field, null);
+    }
+
+    @Override
+    String load(Object stored) {
+        return StandardCharsets.UTF_8.decode(((Pointer) stored).slice()).toString();
+    }
+
+    /** The BEGIN record is written with the first write of the batch, so empty batches leave no records */
+    @Override
+    void begin() {
+        inBatch = true;
+        batchStarted = false;
+    }
+
+    @Override
+    void commit() {
+        if (batchStarted) {
+            append(COMMIT, "", null, null);
+        }
+        inBatch = false;
+    }
+
+    /** The records of the batch are cut off from the BEGIN record on, as recover cuts an unfinished batch */
+    @Override
+    void abort() {
+        inBatch = false;
+        if (batchStarted) {
+            try {
+                truncate(beginSegment, beginPosition);
+            } catch (IOException e) {
+                System.err.println("Gateway: Fail to cut off an aborted batch, " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+    * @Description: Run the write, and wait until it is on disk once the outermost write has released the lock
+    * @Param: [operation]
+    * @return: R
+    */
+    @Override
+    <R> R write(Supplier<R> operation) {
+        R ret = super.write(operation);
+        if (!lock.isWriteLockedByCurrentThread()) {
+            awaitDurable();
+            if (logSize > Math.max(segmentSize, 2 * compactedSize)) {
+                synchronized (compaction) {
+                    compactionRequested = true;
+                    compaction.notifyAll();
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Appending */
+    /** Helper Func, append the record to the active segment, return the position of its value (null if none) */
+    private Pointer append(byte op, String key, String field, String value) {
+        if (op >= 0 && inBatch && !batchStarted) {
+            batchStarted = true;
+            append(BEGIN, "", null, null);
+        }
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] f = field == null ? null : field.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer v = value == null ? null : ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+        int size = recordSize(k, f, v);
+        if (active.position + size > active.capacity()) {
+            roll(size);
+        }
+        if (op == BEGIN) {
+            beginSegment = active;
+            beginPosition = active.position;
+        }
+        Pointer pointer = put(active, op, k, f, v);
+        logSize += size;
+        synchronized (durability) {
+            appended += size;
+            unforced.add(active);
+            durability.notifyAll();
+        }
+        return pointer;
+    }
+
+    /** Helper Func, the size of the record including the header */
+    private static int recordSize(byte[] key, byte[] field, ByteBuffer value) {
+        return HEADER + 1 + 12 + key.length + (field == null ? 0 : field.length)
+                + (value == null ? 0 : value.remaining());
+    }
+
+    /** Helper Func, write the record at the end of the segment, return the position of its value (null if none) */
+    private static Pointer put(Segment segment, byte op, byte[] key, byte[] field, ByteBuffer value) {
+        int start = segment.position;
+        int payload = recordSize(key, field, value) - HEADER;
+        ByteBuffer record = segment.buffer.duplicate();
+        record.position(start + HEADER);
+        record.put(op);
+        record.putInt(key.length).put(key);
+        if (field == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(field.length).put(field);
+        }
+        Pointer pointer = null;
+        if (value == null) {
+            record.putInt(-1);
+        } else {
+            pointer = new Pointer(segment, record.position() + 4, value.remaining());
+            record.putInt(value.remaining()).put(value);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer check = segment.buffer.duplicate();
+        check.position(start + HEADER);
+        check.limit(start + HEADER + payload);
+        crc.update(check);
+        segment.buffer.putInt(start + 4, (int) crc.getValue());
+        segment.buffer.putInt(start, payload); // the length last, until then the record reads as the end
+        segment.position = start + HEADER + payload;
+        return pointer;
+    }
+
+    /** Helper Func, start a new active segment with room for at least the given bytes */
+    private void roll(int size) {
+        try {
+            int id = nextSegmentId++;
+            active = new Segment(id, dir.resolve(segmentName(id)), Math.max(segmentSize, size));
+            segments.add(active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Gateway: Fail to create a log segment", e);
+        }
+    }
+
+    /** Helper Func, cut the log at the position of the segment: the later segments are deleted and the bytes after the
+     * position zeroed, so no record written later is followed by one of the records cut off */
+    private void truncate(Segment segment, int position) throws IOException {
+        for (Segment later : new ArrayList<>(segments.subList(segments.indexOf(segment) + 1, segments.size()))) {
+            Files.delete(later.path);
+            segments.remove(later);
+            logSize -= later.position;
+        }
+        for (int i = position; i < segment.position; i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+        logSize -= segment.position - position;
+        segment.position = position;
+        active = segment;
+    }
+
+    /** Helper Func, the file name of the segment */
+    private static String segmentName(int id) {
+        return String.format("segment-%08d.log", id);
+    }
+
+    /** Group commit */
+    /** Helper Func, wait until everything appended so far has been forced to disk */
+    private void awaitDurable() {
+        synchronized (durability) {
+            long target = appended;
+            while (durable < target) {
+                try {
+                    durability.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Helper Func, force the segments appended to, and wake up the writers waiting for them */
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<Segment> toForce;
+            synchronized (durability) {
+                while (appended == durable) {
+                    try {
+                        durability.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                target = appended;
+                toForce = new ArrayList<>(unforced);
+                unforced.clear();
+            }
+            toForce.forEach(segment -> segment.buffer.force());
+            synchronized (durability) {
+                durable = target;
+                durability.notifyAll();
+            }
+        }
+    }
+
+    /** Compaction */
+    /** Helper Func, compact the log whenever it is requested */
+    private void compactLoop() {
+        while (true) {
+            synchronized (compaction) {
+                while (!compactionRequested) {
+                    try {
+                        compaction.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                compactionRequested = false;
+            }
+            try {
+                compact();
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Gateway: Log compaction failed, " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+    * @Description: Rewrite the live values into one snapshot segment, then delete the older segments. The log rolls
+    * over first to a segment ordered after the snapshot, so the writes going on while the snapshot is forced stay
+    * where they are. Writers wait only while the live values are copied (readers go on) and while the index is
+    * re-pointed to the snapshot. The snapshot is renamed into place only once complete, and its RESET record makes
+    * any older segment left behind by a crash harmless.
+    * @Param: []
+    * @return: void
+    */
+    private void compact() throws IOException {
+        int id;
+        List<Segment> older;
+        lock.writeLock().lock();
+        try {
+            id = nextSegmentId++;
+            roll(0);
+            older = new ArrayList<>(segments.subList(0, segments.size() - 1));
+            lock.readLock().lock(); // downgrade, so no write comes between the roll and the copy
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Pointer, Pointer> moved = new IdentityHashMap<>();
+        Segment snapshot;
+        try {
+            snapshot = snapshot(id, moved);
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshot.buffer.force();
+        Path path = dir.resolve(segmentName(id));
+        Files.move(snapshot.path, path, StandardCopyOption.ATOMIC_MOVE);
+        snapshot.path = path;
+        super.write(() -> {
+            repoint(moved);
+            segments.removeAll(older);
+            segments.add(0, snapshot);
+            long size = 0;
+            for (Segment segment : segments) {
+                size += segment.position;
+            }
+            logSize = size;
+            compactedSize = snapshot.position;
+            return null;
+        });
+        for (Segment segment : older) {
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    /**
+    * @Description: Write the live values into a new snapshot segment under its temporary name, and map the position of
+    * each value to its position in the snapshot. Called holding the read lock.
+    * @Param: [id, moved]
+    * @return: gateway.storage.LogStorage.Segment
+    */
+    private Segment snapshot(int id, Map<Pointer, Pointer> moved) throws IOException {
+        byte[] none = new byte[0];
+        int size = recordSize(none, null, null);
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (entry.getValue() instanceof Map) {
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                    size += recordSize(key, ((String) field.getKey()).getBytes(StandardCharsets.UTF_8),
+                            ((Pointer) field.getValue()).slice());
+                }
+            } else if (entry.getValue() instanceof List) {
+                for (Object value : (List<?>) entry.getValue()) {
+                    size += recordSize(key, null, ((Pointer) value).slice());
+                }
+            } else if (entry.getValue() instanceof Set) {
+                for (Object member : (Set<?>) entry.getValue()) {
+                    size += recordSize(key, ((String) member).getBytes(StandardCharsets.UTF_8), null);
+                }
+            } else if (entry.getValue() instanceof SortedSet) {
+                for (Map.Entry<String, Double> member : ((SortedSet) entry.getValue()).scores.entrySet()) {
+                    size += recordSize(key, member.getKey().getBytes(StandardCharsets.UTF_8),
+                            scoreOf(member.getValue()));
+                }
+            } else {
+                size += recordSize(key, null, ((Pointer) entry.getValue()).slice());
+            }
+        }
+        Segment snapshot = new Segment(id, dir.resolve(segmentName(id) + TMP_SUFFIX), size);
+        put(snapshot, RESET, none, null, null);
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (entry.getValue() instanceof Map) {
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                    Pointer value = (Pointer) field.getValue();
+                    moved.put(value, put(snapshot, (byte) Op.HSET.ordinal(), key,
+                            ((String) field.getKey()).getBytes(StandardCharsets.UTF_8), value.slice()));
+                }
+            } else if (entry.getValue() instanceof List) {
+                for (Object value : (List<?>) entry.getValue()) {
+                    moved.put((Pointer) value, put(snapshot, (byte) Op.RPUSH.ordinal(), key, null,
+                            ((Pointer) value).slice()));
+                }
+            } else if (entry.getValue() instanceof Set) {
+                for (Object member : (Set<?>) entry.getValue()) {
+                    put(snapshot, (byte) Op.SADD.ordinal(), key, ((String) member).getBytes(StandardCharsets.UTF_8), null);
+                }
+            } else if (entry.getValue() instanceof SortedSet) {
+                for (Map.Entry<String, Double> member : ((SortedSet) entry.getValue()).scores.entrySet()) {
+                    put(snapshot, (byte) Op.ZADD.ordinal(), key, member.getKey().getBytes(StandardCharsets.UTF_8),
+                            scoreOf(member.getValue()));
+                }
+            } else {
+                Pointer value = (Pointer) entry.getValue();
+                moved.put(value, put(snapshot, (byte) Op.SET.ordinal(), key, null, value.slice()));
+            }
+        }
+        return snapshot;
+    }
+
+    /** Helper Func, point the values copied into the snapshot to their copies. The values written since the copy point
+     * into the newer segments and are left as they are. Called holding the write lock. */
+    private void repoint(Map<Pointer, Pointer> moved) {
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> hash = (Map<String, Object>) entry.getValue();
+                for (Map.Entry<String, Object> field : hash.entrySet()) {
+                    Pointer copy = moved.get(field.getValue());
+                    if (copy != null) {
+                        field.setValue(copy);
+                    }
+                }
+            } else if (entry.getValue() instanceof List) {
+                @SuppressWarnings("unchecked")
+                ListIterator<Object> values = ((List<Object>) entry.getValue()).listIterator();
+                while (values.hasNext()) {
+                    Pointer copy = moved.get(values.next());
+                    if (copy != null) {
+                        values.set(copy);
+                    }
+                }
+            } else if (!(entry.getValue() instanceof Set) && !(entry.getValue() instanceof SortedSet)) {
+                Pointer copy = moved.get(entry.getValue());
+                if (copy != null) {
+                    entry.setValue(copy);
+                }
+            }
+        }
+    }
+
+    /** Recovery */
+    /**
+    * @Description: Scan the segments in order and rebuild the index. Snapshots which were not renamed into place are
+    * deleted, and an unfinished batch at the end of the log is cut off, so new records do not join it.
+    * @Param: []
+    * @return: void
+    */
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        File[] listed = dir.toFile().listFiles();
+        for (File file : listed == null ? new File[0] : listed) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                Files.delete(file.toPath());
+            } else if (matcher.matches()) {
+                files.put(Integer.valueOf(matcher.group(1)), file.toPath());
+            }
+        }
+        List<Object[]> batch = null;
+        Segment batchSegment = null;
+        int batchStart = 0;
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            Segment segment = new Segment(file.getKey(), file.getValue(), (int) Files.size(file.getValue()));
+            segments.add(segment);
+            nextSegmentId = file.getKey() + 1;
+            ByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position + HEADER <= segment.capacity()) {
+                int payload = buffer.getInt(position);
+                if (payload <= 0 || position + HEADER + payload > segment.capacity()) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                ByteBuffer check = buffer.duplicate();
+                check.position(position + HEADER);
+                check.limit(position + HEADER + payload);
+                crc.update(check);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    break;
+                }
+                Object[] record = readRecord(segment, position + HEADER);
+                byte op = (byte) record[0];
+                if (op == BEGIN) {
+                    batch = new ArrayList<>();
+                    batchSegment = segment;
+                    batchStart = position;
+                } else if (op == COMMIT) {
+                    batch.forEach(this::replay);
+                    batch = null;
+                } else if (batch != null) {
+                    batch.add(record);
+                } else {
+                    replay(record);
+                }
+                position += HEADER + payload;
+            }
+            segment.position = position;
+            logSize += position;
+        }
+        if (batch != null) {
+            truncate(batchSegment, batchStart);
+        }
+        if (segments.isEmpty()) {
+            roll(0);
+        } else {
+            active = segments.get(segments.size() - 1);
+            // records after the end may have reached the disk without the ones before them, drop them
+            for (int i = active.position; i < active.capacity(); i++) {
+                if (active.buffer.get(i) != 0) {
+                    active.buffer.put(i, (byte) 0);
+                }
+            }
+        }
+    }
+
+    /** Helper Func, read the record at the offset as {op, key, field, value pointer} */
+    private static Object[] readRecord(Segment segment, int offset) {
+        ByteBuffer record = segment.buffer.duplicate();
+        record.position(offset);
+        byte op = record.get();
+        String key = readString(record);
+        String field = readString(record);
+        int length = record.getInt();
+        Pointer value = length < 0 ? null : new Pointer(segment, record.position(), length);
+        return new Object[]{op, key, field, value};
+    }
+
+    /** Helper Func, read a string written as [int length][bytes], null for a length of -1 */
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Helper Func, the score of a sorted set member as it is logged */
+    private static ByteBuffer scoreOf(double score) {
+        return ByteBuffer.wrap(String.valueOf(score).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Helper Func, apply the record to the index */
+    private void replay(Object[] record) {
+        byte op = (byte) record[0];
+        String key = (String) record[1];
+        String field = (String) record[2];
+        Object value = record[3];
+        if (op == RESET) {
+            data.clear();
+            return;
+        }
+        switch (Op.values()[op]) {
+            case SET:
+                data.put(key, value);
+                break;
+            case HSET:
+                hash(key, true).put(field, value);
+                break;
+            case HDEL:
+                Map<String, Object> hash = hash(key, false);
+                if (hash != null) {
+                    hash.remove(field);
+                    if (hash.isEmpty()) {
+                        data.remove(key);
+                    }
+                }
+                break;
+            case DEL:
+                data.remove(key);
+                break;
+            case LPUSH:
+                list(key, true).addFirst(value);
+                break;
+            case RPUSH:
+                list(key, true).addLast(value);
+                break;
+            case SADD:
+                set(key, true).add(field);
+                break;
+            case ZADD:
+                sortedSet(key, true).add(field, Double.parseDouble(load(value)));
+                break;
+            case ZREM:
+                SortedSet sortedSet = sortedSet(key, false);
+                if (sortedSet != null) {
+                    sortedSet.remove(field);
+                    if (sortedSet.scores.isEmpty()) {
+                        data.remove(key);
+                    }
+                }
+                break;
+            case SREM:
+                Set<String> set = set(key, false);
+                if (set != null) {
+                    set.remove(field);
+                    if (set.isEmpty()) {
+                        data.remove(key);
+                    }
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,837 @@
+package gateway.storage;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * @program: group_0173
+ * @description: Storage keeping all data in this process, for running and load testing the business logic without a
+ * Redis server. Reads run concurrently, writes, batches and scripts run one at a time, so they are atomic the same way
+ * as on Redis. A batch or script which throws is undone, nothing of it is seen.
+ * @note: Nothing is persisted, the data is gone when the process exits. The hooks let LogStorage persist it.
+ * @create: 2020-12-15 11:30
+ **/
+public class MemoryStorage implements Storage {
+
+    /** Prefix of the scan cursors, so a field named like SCAN_END is still a valid cursor */
+    private static final String CURSOR_PREFIX = ">";
+
+    /** The write primitives, as passed to the hooks */
+    enum Op { SET, HSET, HDEL, DEL, LPUSH, RPUSH, SADD, SREM, ZADD, ZREM }
+
+    /** key -> Map<String, Object> (hash), LinkedList<Object> (list), Set<String> (set), SortedSet (zset) or any other
+     * object (string), the values of hashes, lists and strings are kept in the form returned by the store hook */
+    final Map<String, Object> data = new HashMap<>();
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+    /** Depth of the nested batches and scripts running, and the undo actions of their writes so far, latest first */
+    private int batchDepth = 0;
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+
+    /** Hooks for subclasses persisting the data, see LogStorage. They are called holding the write lock. */
+    /** Hook, called for each value written, return the form kept in memory (not kept for the scores of sorted sets) */
+    Object store(Op op, String key, String field, String value) {
+        return value;
+    }
+
+    /** Hook, called for each write without a value: a key (field is null) or hash field removed, or a set or sorted
+     * set member added or removed, the member is passed as the field */
+    void erase(Op op, String key, String field) {
+    }
+
+    /** Hook, the value of the form kept in memory */
+    String load(Object stored) {
+        return (String) stored;
+    }
+
+    /** Hooks, called before and after the writes of the outermost batch or script. Abort is called instead of commit
+     * when they throw, once their writes have been undone in memory */
+    void begin() {
+    }
+
+    void commit() {
+    }
+
+    void abort() {
+    }
+
+    /** Helper Func, run the read under the read lock */
+    <R> R read(Supplier<R> operation) {
+        return locked(lock.readLock(), operation);
+    }
+
+    /** Helper Func, run the write under the write lock */
+    <R> R write(Supplier<R> operation) {
+        return locked(lock.writeLock(), operation);
+    }
+
+    /** Helper Func, run the writes of a batch or script under the write lock, and undo them if they throw */
+    private <R> R undoable(Supplier<R> writes) {
+        return write(() -> {
+            if (batchDepth++ == 0) {
+                begin();
+            }
+            boolean done = false;
+            try {
+                R ret = writes.get();
+                if (batchDepth == 1) {
+                    commit();
+                    undo.clear();
+                }
+                done = true;
+                return ret;
+            } finally {
+                if (--batchDepth == 0 && !done) {
+                    while (!undo.isEmpty()) {
+                        undo.pop().run();
+                    }
+                    abort();
+                }
+            }
+        });
+    }
+
+    /** Helper Func, remember how to undo the write just made if a batch or script is running */
+    private void undo(Runnable action) {
+        if (batchDepth > 0) {
+            undo.push(action);
+        }
+    }
+
+    /** Helper Func, put the container back under the key in an undo, or drop the key if the container is empty */
+    private void restore(String key, Object container, boolean empty) {
+        if (empty) {
+            data.remove(key);
+        } else {
+            data.put(key, container);
+        }
+    }
+
+    /** Helper Func, undo the put of the field: put its old value back or remove it */
+    private void unput(String key, Map<String, Object> hash, String field, Object old) {
+        if (old == null) {
+            hash.remove(field);
+        } else {
+            hash.put(field, old);
+        }
+        restore(key, hash, hash.isEmpty());
+    }
+
+    /** Helper Func, run the operation holding the lock */
+    private <R> R locked(Lock l, Supplier<R> operation) {
+        l.lock();
+        try {
+            return operation.get();
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /** Helper Func, the type of the value as reported by TYPE */
+    private static String typeOf(Object value) {
+        if (value == null) {
+            return "none";
+        }
+        return value instanceof Map ? "hash" : value instanceof List ? "list" : value instanceof Set ? "set"
+                : value instanceof SortedSet ? "zset" : "string";
+    }
+
+    /** Helper Func, the value of the key if it has the given type, null if the key does not exist */
+    private Object value(String key, String type) {
+        Object value = data.get(key);
+        if (value != null && !typeOf(value).equals(type)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return value;
+    }
+
+    /** Helper Func, the hash of the key, created if it does not exist and create is true */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> hash(String key, boolean create) {
+        Map<String, Object> hash = (Map<String, Object>) value(key, "hash");
+        if (hash == null && create) {
+            hash = new HashMap<>();
+            data.put(key, hash);
+        }
+        return hash;
+    }
+
+    /** Helper Func, the list of the key, created if it does not exist and create is true */
+    @SuppressWarnings("unchecked")
+    LinkedList<Object> list(String key, boolean create) {
+        LinkedList<Object> list = (LinkedList<Object>) value(key, "list");
+        if (list == null && create) {
+            list = new LinkedList<>();
+            data.put(key, list);
+        }
+        return list;
+    }
+
+    /** Helper Func, the set of the key, created if it does not exist and create is true */
+    @SuppressWarnings("unchecked")
+    Set<String> set(String key, boolean create) {
+        Set<String> set = (Set<String>) value(key, "set");
+        if (set == null && create) {
+            set = new HashSet<>();
+            data.put(key, set);
+        }
+        return set;
+    }
+
+    /** A sorted set: the score of each member, and the members ordered by score and then by member */
+    static final class SortedSet {
+        final Map<String, Double> scores = new HashMap<>();
+        final TreeSet<Map.Entry<String, Double>> order = new TreeSet<>((a, b) -> {
+            int c = Double.compare(a.getValue(), b.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+
+        /** Add the member or update its score, return whether it is new */
+        boolean add(String member, double score) {
+            Double old = scores.put(member, score);
+            if (old != null) {
+                order.remove(new AbstractMap.SimpleImmutableEntry<>(member, old));
+            }
+            order.add(new AbstractMap.SimpleImmutableEntry<>(member, score));
+            return old == null;
+        }
+
+        /** Remove the member, return whether it was in the sorted set */
+        boolean remove(String member) {
+            Double old = scores.remove(member);
+            if (old != null) {
+                order.remove(new AbstractMap.SimpleImmutableEntry<>(member, old));
+            }
+            return old != null;
+        }
+
+        /** The entries from rank start to end, see zrange */
+        List<Map.Entry<String, Double>> range(long start, long end) {
+            List<Map.Entry<String, Double>> ret = new ArrayList<>();
+            int size = order.size();
+            long from = Math.max(start < 0 ? size + start : start, 0);
+            long to = Math.min(end < 0 ? size + end : end, size - 1);
+            int rank = 0;
+            for (Map.Entry<String, Double> entry : order) {
+                if (rank > to) {
+                    break;
+                }
+                if (rank++ >= from) {
+                    ret.add(entry);
+                }
+            }
+            return ret;
+        }
+
+        /** The entries with scores from min to max, found from the lower bound in the order instead of a walk */
+        List<Map.Entry<String, Double>> rangeByScore(double min, double max) {
+            List<Map.Entry<String, Double>> ret = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : order.tailSet(new AbstractMap.SimpleImmutableEntry<>("", min))) {
+                if (entry.getValue() > max) {
+                    break;
+                }
+                ret.add(entry);
+            }
+            return ret;
+        }
+    }
+
+    /** Helper Func, the sorted set of the key, created if it does not exist and create is true */
+    SortedSet sortedSet(String key, boolean create) {
+        SortedSet set = (SortedSet) value(key, "zset");
+        if (set == null && create) {
+            set = new SortedSet();
+            data.put(key, set);
+        }
+        return set;
+    }
+
+    @Override
+    public String type(String key) {
+        return read(() -> typeOf(data.get(key)));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return read(() -> data.containsKey(key));
+    }
+
+    @Override
+    public void del(String... keys) {
+        write(() -> {
+            for (String key : keys) {
+                if (data.containsKey(key)) {
+                    erase(Op.DEL, key, null);
+                    Object old = data.remove(key);
+                    undo(() -> data.put(key, old));
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> keys(String pattern) {
+        String[] parts = pattern.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(Pattern.quote(parts[i]));
+        }
+        Pattern compiled = Pattern.compile(regex.toString());
+        return read(() -> {
+            Set<String> keys = new HashSet<>();
+            for (String key : data.keySet()) {
+                if (compiled.matcher(key).matches()) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        });
+    }
+
+    @Override
+    public String get(String key) {
+        return read(() -> {
+            Object value = value(key, "string");
+            return value == null ? null : load(value);
+        });
+    }
+
+    @Override
+    public boolean setnx(String key, String value) {
+        return write(() -> {
+            if (data.containsKey(key)) {
+                return false;
+            }
+            data.put(key, store(Op.SET, key, null, value));
+            undo(() -> data.remove(key));
+            return true;
+        });
+    }
+
+    @Override
+    public long incrBy(String key, long delta) {
+        return write(() -> {
+            Object value = value(key, "string");
+            long ret = (value == null ? 0 : Long.parseLong(load(value))) + delta;
+            Object old = data.put(key, store(Op.SET, key, null, String.valueOf(ret)));
+            undo(() -> restore(key, old, old == null));
+            return ret;
+        });
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return read(() -> {
+            Map<String, Object> hash = hash(key, false);
+            Object value = hash == null ? null : hash.get(field);
+            return value == null ? null : load(value);
+        });
+    }
+
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        return read(() -> {
+            Map<String, Object> hash = hash(key, false);
+            List<String> values = new ArrayList<>();
+            for (String field : fields) {
+                Object value = hash == null ? null : hash.get(field);
+                values.add(value == null ? null : load(value));
+            }
+            return values;
+        });
+    }
+
+    /** The cursor is the last field returned, pages are in the order of the fields */
+    @Override
+    public ScanPage hscan(String key, String cursor, int count) {
+        return read(() -> {
+            String after = cursor.equals(SCAN_END) ? null : cursor.substring(1);
+            TreeMap<String, String> page = new TreeMap<>();
+            Map<String, Object> hash = hash(key, false);
+            if (hash != null) {
+                for (Map.Entry<String, Object> entry : hash.entrySet()) {
+                    String field = entry.getKey();
+                    if ((after == null || field.compareTo(after) > 0)
+                            && (page.size() < count || field.compareTo(page.lastKey()) < 0)) {
+                        page.put(field, null);
+                        if (page.size() > count) {
+                            page.pollLastEntry();
+                        }
+                    }
+                }
+                page.replaceAll((field, value) -> load(hash.get(field)));
+            }
+            String next = page.size() < count ? SCAN_END : CURSOR_PREFIX + page.lastKey();
+            return new ScanPage(next, new ArrayList<>(page.entrySet()));
+        });
+    }
+
+    @Override
+    public Set<String> hkeys(String key) {
+        return read(() -> {
+            Map<String, Object> hash = hash(key, false);
+            return hash != null ? new HashSet<>(hash.keySet()) : new HashSet<>();
+        });
+    }
+
+    @Override
+    public long hlen(String key) {
+        return read(() -> {
+            Map<String, Object> hash = hash(key, false);
+            return hash != null ? (long) hash.size() : 0L;
+        });
+    }
+
+    @Override
+    public boolean hexists(String key, String field) {
+        return read(() -> {
+            Map<String, Object> hash = hash(key, false);
+            return hash != null && hash.containsKey(field);
+        });
+    }
+
+    @Override
+    public void hset(String key, String field, String value) {
+        write(() -> {
+            Map<String, Object> hash = hash(key, true);
+            Object old = hash.put(field, store(Op.HSET, key, field, value));
+            undo(() -> unput(key, hash, field, old));
+            return null;
+        });
+    }
+
+    @Override
+    public void hmset(String key, Map<String, String> map) {
+        write(() -> {
+            Map<String, Object> hash = hash(key, true);
+            map.forEach((field, value) -> {
+                Object old = hash.put(field, store(Op.HSET, key, field, value));
+                undo(() -> unput(key, hash, field, old));
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public void hdel(String key, String field) {
+        write(() -> {
+            Map<String, Object> hash = hash(key, false);
+            if (hash != null && hash.containsKey(field)) {
+                erase(Op.HDEL, key, field);
+                Object old = hash.remove(field);
+                undo(() -> {
+                    hash.put(field, old);
+                    data.put(key, hash);
+                });
+                if (hash.isEmpty()) {
+                    data.remove(key);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public long hincrBy(String key, String field, long delta) {
+        return write(() -> {
+            Map<String, Object> hash = hash(key, true);
+            Object value = hash.get(field);
+            long ret = (value == null ? 0 : Long.parseLong(load(value))) + delta;
+            Object old = hash.put(field, store(Op.HSET, key, field, String.valueOf(ret)));
+            undo(() -> unput(key, hash, field, old));
+            return ret;
+        });
+    }
+
+    @Override
+    public void lpush(String key, String... values) {
+        write(() -> {
+            LinkedList<Object> list = list(key, true);
+            for (String value : values) {
+                list.addFirst(store(Op.LPUSH, key, null, value));
+                undo(() -> {
+                    list.removeFirst();
+                    restore(key, list, list.isEmpty());
+                });
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void rpush(String key, String... values) {
+        write(() -> {
+            LinkedList<Object> list = list(key, true);
+            for (String value : values) {
+                list.addLast(store(Op.RPUSH, key, null, value));
+                undo(() -> {
+                    list.removeLast();
+                    restore(key, list, list.isEmpty());
+                });
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        return read(() -> {
+            List<String> ret = new ArrayList<>();
+            List<Object> list = list(key, false);
+            if (list == null) {
+                return ret;
+            }
+            int size = list.size();
+            int from = (int) Math.max(start < 0 ? size + start : start, 0);
+            int to = (int) Math.min(end < 0 ? size + end : end, size - 1);
+            if (from <= to) {
+                for (Object value : list.subList(from, to + 1)) {
+                    ret.add(load(value));
+                }
+            }
+            return ret;
+        });
+    }
+
+    @Override
+    public long sadd(String key, String... members) {
+        return write(() -> {
+            Set<String> set = set(key, true);
+            long added = 0;
+            for (String member : members) {
+                if (set.add(member)) {
+                    erase(Op.SADD, key, member);
+                    undo(() -> {
+                        set.remove(member);
+                        restore(key, set, set.isEmpty());
+                    });
+                    added++;
+                }
+            }
+            return added;
+        });
+    }
+
+    @Override
+    public long srem(String key, String... members) {
+        return write(() -> {
+            Set<String> set = set(key, false);
+            long removed = 0;
+            if (set != null) {
+                for (String member : members) {
+                    if (set.remove(member)) {
+                        erase(Op.SREM, key, member);
+                        undo(() -> {
+                            set.add(member);
+                            data.put(key, set);
+                        });
+                        removed++;
+                    }
+                }
+                if (set.isEmpty()) {
+                    data.remove(key);
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public boolean sismember(String key, String member) {
+        return read(() -> {
+            Set<String> set = set(key, false);
+            return set != null && set.contains(member);
+        });
+    }
+
+    @Override
+    public long scard(String key) {
+        return read(() -> {
+            Set<String> set = set(key, false);
+            return set == null ? 0L : set.size();
+        });
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return read(() -> {
+            Set<String> set = set(key, false);
+            return set == null ? new HashSet<>() : new HashSet<>(set);
+        });
+    }
+
+    @Override
+    public List<Set<String>> smembersAll(List<String> keys) {
+        return read(() -> {
+            List<Set<String>> sets = new ArrayList<>();
+            for (String key : keys) {
+                sets.add(smembers(key));
+            }
+            return sets;
+        });
+    }
+
+    /**
+    * @Description: Add the member or update its score, the score is logged as the value
+    * @Param: [key, score, member]
+    * @return: boolean
+    */
+    @Override
+    public boolean zadd(String key, double score, String member) {
+        return write(() -> {
+            store(Op.ZADD, key, member, String.valueOf(score));
+            SortedSet set = sortedSet(key, true);
+            Double old = set.scores.get(member);
+            undo(() -> {
+                if (old == null) {
+                    set.remove(member);
+                } else {
+                    set.add(member, old);
+                }
+                restore(key, set, set.scores.isEmpty());
+            });
+            return set.add(member, score);
+        });
+    }
+
+    @Override
+    public long zrem(String key, String... members) {
+        return write(() -> {
+            SortedSet set = sortedSet(key, false);
+            long removed = 0;
+            if (set != null) {
+                for (String member : members) {
+                    Double old = set.scores.get(member);
+                    if (set.remove(member)) {
+                        erase(Op.ZREM, key, member);
+                        undo(() -> {
+                            set.add(member, old);
+                            data.put(key, set);
+                        });
+                        removed++;
+                    }
+                }
+                if (set.scores.isEmpty()) {
+                    data.remove(key);
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set != null ? set.scores.get(member) : null;
+        });
+    }
+
+    /** The rank is counted through the ordered members, Redis finds it in O(log n) */
+    @Override
+    public Long zrank(String key, String member) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            Double score = set != null ? set.scores.get(member) : null;
+            if (score == null) {
+                return null;
+            }
+            return (long) set.order.headSet(new AbstractMap.SimpleImmutableEntry<>(member, score)).size();
+        });
+    }
+
+    @Override
+    public long zcard(String key) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set == null ? 0L : set.scores.size();
+        });
+    }
+
+    @Override
+    public long zcount(String key, double min, double max) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set == null ? 0L : set.rangeByScore(min, max).size();
+        });
+    }
+
+    @Override
+    public List<String> zrange(String key, long start, long end) {
+        return read(() -> {
+            List<String> ret = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : zrangeWithScores(key, start, end)) {
+                ret.add(entry.getKey());
+            }
+            return ret;
+        });
+    }
+
+    @Override
+    public List<Map.Entry<String, Double>> zrangeWithScores(String key, long start, long end) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set == null ? new ArrayList<>() : set.range(start, end);
+        });
+    }
+
+    @Override
+    public List<String> zrangeByScore(String key, double min, double max) {
+        return read(() -> {
+            List<String> ret = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : zrangeByScoreWithScores(key, min, max)) {
+                ret.add(entry.getKey());
+            }
+            return ret;
+        });
+    }
+
+    @Override
+    public List<Map.Entry<String, Double>> zrangeByScoreWithScores(String key, double min, double max) {
+        return read(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set == null ? new ArrayList<>() : set.rangeByScore(min, max);
+        });
+    }
+
+    @Override
+    public List<List<String>> zrangeAll(List<String> keys) {
+        return read(() -> {
+            List<List<String>> lists = new ArrayList<>();
+            for (String key : keys) {
+                lists.add(zrange(key, 0, -1));
+            }
+            return lists;
+        });
+    }
+
+    /**
+    * @Description: Deliver the message to the listeners of the channel in this process, in the calling thread
+    * @Param: [channel, message]
+    * @return: void
+    */
+    @Override
+    public void publish(String channel, String message) {
+        for (Listener listener : listeners.getOrDefault(channel, new ArrayList<>())) {
+            listener.onMessage(message);
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Listener listener) {
+        listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+        listener.onSubscribe();
+    }
+
+    /**
+    * @Description: Apply the writes holding the write lock, the messages are published after the writes are applied.
+    * If the writes throw, the ones applied so far are undone and no message is published.
+    * @Param: [writes]
+    * @return: void
+    */
+    @Override
+    public void atomically(Consumer<Batch> writes) {
+        List<String[]> messages = new ArrayList<>();
+        Batch batch = new Batch() {
+            @Override
+            public void del(String... keys) {
+                MemoryStorage.this.del(keys);
+            }
+
+            @Override
+            public void hset(String key, String field, String value) {
+                MemoryStorage.this.hset(key, field, value);
+            }
+
+            @Override
+            public void hdel(String key, String field) {
+                MemoryStorage.this.hdel(key, field);
+            }
+
+            @Override
+            public void hincrBy(String key, String field, long delta) {
+                MemoryStorage.this.hincrBy(key, field, delta);
+            }
+
+            @Override
+            public void lpush(String key, String... values) {
+                MemoryStorage.this.lpush(key, values);
+            }
+
+            @Override
+            public void rpush(String key, String... values) {
+                MemoryStorage.this.rpush(key, values);
+            }
+
+            @Override
+            public void sadd(String key, String... members) {
+                MemoryStorage.this.sadd(key, members);
+            }
+
+            @Override
+            public void srem(String key, String... members) {
+                MemoryStorage.this.srem(key, members);
+            }
+
+            @Override
+            public void zadd(String key, double score, String member) {
+                MemoryStorage.this.zadd(key, score, member);
+            }
+
+            @Override
+            public void zrem(String key, String... members) {
+                MemoryStorage.this.zrem(key, members);
+            }
+
+            @Override
+            public void publish(String channel, String message) {
+                messages.add(new String[]{channel, message});
+            }
+        };
+        undoable(() -> {
+            writes.accept(batch);
+            return null;
+        });
+        for (String[] message : messages) {
+            publish(message[0], message[1]);
+        }
+    }
+
+    /** Scripts are run by their Java implementation, nothing to load */
+    @Override
+    public void load(Script... scripts) {
+    }
+
+    /**
+    * @Description: Run the Java implementation of the script holding the write lock, its writes are undone if it throws
+    * @Param: [script, keys, args]
+    * @return: java.lang.Object
+    */
+    @Override
+    public Object eval(Script script, List<String> keys, List<String> args) {
+        return undoable(() -> script.apply(this, keys, args));
+    }
+
+    @Override
+    public boolean ping() {
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package gateway.storage;
+
+import java.util.List;
+
+/**
+ * @program: group_0173
+ * @description: Script is an atomic operation run inside the storage. It has a Lua source for Redis, and the same
+ * operation written against Storage for the backends that can not run Lua.
+ * @create: 2020-12-15 10:20
+ **/
+public interface Script {
+
+    /** The Lua source of the script */
+    String getSource();
+
+    /**
+     * Run the script against the storage, which makes sure nothing else runs in between. The reply has to match
+     * the one of the Lua source: Long for integers and List for arrays.
+     */
+    Object apply(Storage storage, List<String> keys, List<String> args);
+}
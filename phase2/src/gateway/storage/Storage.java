@@ -0,0 +1,185 @@
+package gateway.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @program: group_0173
+ * @description: Storage is the SPI behind all gateways: the string, counter, hash, list, set, sorted set, pub/sub and
+ * script primitives they are built on. JedisStorage keeps the data in Redis, MemoryStorage keeps it in this process; Config.STORAGE
+ * selects one at startup.
+ * @note: The semantics follow the Redis commands of the same names, e.g. a missing key reads as empty.
+ * @create: 2020-12-15 10:20
+ **/
+public interface Storage {
+
+    /** Listener of the messages published on a channel */
+    interface Listener {
+        /** Called when the subscription is (re)established, messages may have been missed before */
+        void onSubscribe();
+
+        /** Called for every message published on the channel */
+        void onMessage(String message);
+    }
+
+    /** The writes which can be queued in an atomic batch, see Storage.atomically */
+    interface Batch {
+        void del(String... keys);
+
+        void hset(String key, String field, String value);
+
+        void hdel(String key, String field);
+
+        void hincrBy(String key, String field, long delta);
+
+        void lpush(String key, String... values);
+
+        void rpush(String key, String... values);
+
+        void sadd(String key, String... members);
+
+        void srem(String key, String... members);
+
+        void zadd(String key, double score, String member);
+
+        void zrem(String key, String... members);
+
+        void publish(String channel, String message);
+    }
+
+    /** One page of a hash scan, see hscan */
+    final class ScanPage {
+        /** The cursor of the next page, SCAN_END once the scan is complete */
+        public final String cursor;
+        public final List<Map.Entry<String, String>> entries;
+
+        public ScanPage(String cursor, List<Map.Entry<String, String>> entries) {
+            this.cursor = cursor;
+            this.entries = entries;
+        }
+    }
+
+    /** The cursor of the first page of a scan, also returned after the last page */
+    String SCAN_END = "0";
+
+    /** Keys */
+    /** The type of the key: "string", "hash", "list", "set", "zset" or "none" */
+    String type(String key);
+
+    boolean exists(String key);
+
+    void del(String... keys);
+
+    /** The keys matching the glob pattern, only '*' is supported as wildcard */
+    Set<String> keys(String pattern);
+
+    /** Strings and counters */
+    String get(String key);
+
+    /** Set the key if it does not exist, return whether it has been set */
+    boolean setnx(String key, String value);
+
+    long incrBy(String key, long delta);
+
+    /** Hashes */
+    String hget(String key, String field);
+
+    /** The values of the fields in order, null for the missing ones */
+    List<String> hmget(String key, String... fields);
+
+    /** The page of about count entries after the cursor (SCAN_END for the first page). Fields which are in the hash
+     * during the whole scan are returned at least once; a field may be returned twice if the hash changes. */
+    ScanPage hscan(String key, String cursor, int count);
+
+    boolean hexists(String key, String field);
+
+    Set<String> hkeys(String key);
+
+    long hlen(String key);
+
+    void hset(String key, String field, String value);
+
+    void hmset(String key, Map<String, String> map);
+
+    void hdel(String key, String field);
+
+    long hincrBy(String key, String field, long delta);
+
+    /** Lists */
+    void lpush(String key, String... values);
+
+    void rpush(String key, String... values);
+
+    /** The elements from start to end (both inclusive, negative counts from the tail) */
+    List<String> lrange(String key, long start, long end);
+
+    /** Sets */
+    /** Add the members, return the number of members which were not in the set */
+    long sadd(String key, String... members);
+
+    /** Remove the members, return the number of members which were in the set */
+    long srem(String key, String... members);
+
+    boolean sismember(String key, String member);
+
+    long scard(String key);
+
+    Set<String> smembers(String key);
+
+    /** The members of the sets of the keys in one round trip, in the order of the keys */
+    List<Set<String>> smembersAll(List<String> keys);
+
+    /** Sorted sets, ordered by score and then by member */
+    /** Add the member or update its score, return whether it was not in the sorted set */
+    boolean zadd(String key, double score, String member);
+
+    /** Remove the members, return the number of members which were in the sorted set */
+    long zrem(String key, String... members);
+
+    /** The score of the member, null if it is not in the sorted set */
+    Double zscore(String key, String member);
+
+    /** The 0-based rank of the member, null if it is not in the sorted set */
+    Long zrank(String key, String member);
+
+    long zcard(String key);
+
+    /** The number of members with scores from min to max (both inclusive) */
+    long zcount(String key, double min, double max);
+
+    /** The members from rank start to end (both inclusive, negative counts from the last) */
+    List<String> zrange(String key, long start, long end);
+
+    /** The members with their scores from rank start to end, see zrange */
+    List<Map.Entry<String, Double>> zrangeWithScores(String key, long start, long end);
+
+    /** The members with scores from min to max (both inclusive), in order */
+    List<String> zrangeByScore(String key, double min, double max);
+
+    /** The members with their scores from min to max, see zrangeByScore */
+    List<Map.Entry<String, Double>> zrangeByScoreWithScores(String key, double min, double max);
+
+    /** The whole sorted sets of the keys in one round trip, in the order of the keys */
+    List<List<String>> zrangeAll(List<String> keys);
+
+    /** Pub/Sub */
+    void publish(String channel, String message);
+
+    /** Listen to the channel in the background until the process exits, reconnecting if needed */
+    void subscribe(String channel, Listener listener);
+
+    /** Transactions and scripts */
+    /** Run the queued writes atomically, no other client sees a part of them */
+    void atomically(Consumer<Batch> writes);
+
+    /** Load the scripts, so they do not have to be sent on each run */
+    void load(Script... scripts);
+
+    /** Run the script atomically. Integer replies are Long, array replies are List */
+    Object eval(Script script, List<String> keys, List<String> args);
+
+    /** Whether the storage can be reached */
+    boolean ping();
+}
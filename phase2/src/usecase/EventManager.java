@@ -1,19 +1,23 @@
 package usecase;
 
 import entity.Attendee;
+import entity.Room;
 import entity.VipUser;
 import entity.event.Event;
 import entity.event.MultiSpeakerEvent;
 import entity.event.OneSpeakerEvent;
 import entity.eventFactory.FactoryProducer;
 import gateway.GatewayFacade;
+import gateway.bean.EventSummary;
 import org.jetbrains.annotations.NotNull;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The Event Manager class
@@ -24,7 +28,8 @@ public class EventManager {
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
     /**
-     * Judge whether the new event can be created
+     * Judge whether the new event can be created. The room is checked for overlapping events by its schedule, without
+     * fetching any event.
      *
      * @param roomId the room id this new event will take place
      * @param start the start time of this new event
@@ -32,16 +37,15 @@ public class EventManager {
      * @return the boolean show whether the new event can be created
      */
     public boolean canCreateEvent(int roomId, LocalDateTime start, LocalDateTime end, int capacity, GatewayFacade g){
-        List<Event> allEvent = g.getEventList();
-        for (Event event : allEvent) {
-            if (roomId == event.getRoomId() &&
-                    ((event.getStartTime().isBefore(end) & !(event.getEndTime().isBefore(start) |
-                            event.getEndTime().equals(start))) | capacity > g.getRoomById(roomId).getCapacity())) {
-                return false;
-            }
-        }
         LocalDateTime today = LocalDateTime.now();
-        return start.isBefore(end) && today.isBefore(start);
+        if (!start.isBefore(end) || !today.isBefore(start)) {
+            return false;
+        }
+        Room room = g.getRoomById(roomId);
+        if (room != null && capacity > room.getCapacity()) {
+            return false;
+        }
+        return !g.isRoomBooked(roomId, start, end);
     }
 
     /**
@@ -114,9 +118,7 @@ public class EventManager {
      * @param g the database
      */
     public void setSpeakerToOneSpeakerEvent(int speakerId, int eventId, GatewayFacade g){
-        OneSpeakerEvent event = g.getOneSpeakerEventById(eventId);
-        event.setSpeaker(speakerId);
-        g.updateEvent(event);
+        g.mutateEvent(eventId, event -> ((OneSpeakerEvent) event).setSpeaker(speakerId));
     }
 
     /**
@@ -126,9 +128,7 @@ public class EventManager {
      * @param g the database
      */
     public void addSpeakerToMultiSpeakerEvent(int speakerId, int eventId, GatewayFacade g) {
-        MultiSpeakerEvent event = g.getMultiSpeakerEventById(eventId);
-        event.addNewSpeaker(speakerId);
-        g.updateEvent(event);
+        g.mutateEvent(eventId, event -> ((MultiSpeakerEvent) event).addNewSpeaker(speakerId));
     }
 
     /**
@@ -140,16 +140,16 @@ public class EventManager {
      * @return the boolean shows whether a user can sign up to an event
      */
     public boolean canAddUserToEvent(int userId, int eventId, GatewayFacade g) {
-        Event e = g.getEventById(eventId);
-        if (!isExistingEvent(eventId, g)) {
+        Event e = g.getEventFieldsById(eventId);
+        if (e == null) {
             return false;
         }
         else if (!(g.getUserById(userId) instanceof VipUser) & e.isVipEvent()) {
             return false;
         }
         else {
-            if (e.getSignedUpUserList().contains(userId)
-                    | e.getCapacity() <= e.getSignedUpUserList().size()) {
+            if (g.isUserSignedUpForEvent(userId, eventId)
+                    || e.getCapacity() <= g.countSignedUpUsersOfEvent(eventId)) {
                 return false;
             }
             return true;
@@ -163,9 +163,31 @@ public class EventManager {
      * @param g the database
      */
     public void addUserToEvent(int userId, int eventId, GatewayFacade g){
-        Event event = g.getEventById(eventId);
-        event.addUserToEvent(userId);
-        g.updateEvent(event);
+        g.addUserToEvent(userId, eventId);
+    }
+
+    /**
+     * Sign the user up for an event and add the event to the user, atomically in the database. The capacity, VIP
+     * status and duplicates are checked there as well, so two users can not take the last spot at the same time.
+     * @param userId the user id
+     * @param eventId the event id
+     * @param g the database
+     * @return true if the user is signed up
+     */
+    public boolean enrollUserInEvent(int userId, int eventId, GatewayFacade g) {
+        return g.enrollUserInEvent(userId, eventId);
+    }
+
+    /**
+     * Cancel the enrollment of a user in an event, and move the first ranked waitlist user into the event,
+     * atomically in the database. Both the event and the users are updated.
+     * @param userId the user id
+     * @param eventId the event id
+     * @param g the database
+     * @return true if the user had signed up for the event
+     */
+    public boolean cancelEnrollment(int userId, int eventId, GatewayFacade g) {
+        return g.cancelEnrollmentInEvent(userId, eventId);
     }
 
     /**
@@ -177,7 +199,7 @@ public class EventManager {
      */
     public boolean canRemoveSignedUpUser(int userId, int eventId, GatewayFacade g) {
         if (isExistingEvent(eventId, g)) {
-            return g.getEventById(eventId).getSignedUpUserList().contains(userId);
+            return g.isUserSignedUpForEvent(userId, eventId);
         }
         return false;
     }
@@ -189,9 +211,7 @@ public class EventManager {
      * @param g the database
      */
     public void removeSignedUpUser(int userId, int eventId, GatewayFacade g) {
-        Event event = g.getEventById(eventId);
-        event.removeUserFromEvent(userId);
-        g.updateEvent(event);
+        g.removeUserFromEvent(userId, eventId);
     }
 
 
@@ -201,11 +221,9 @@ public class EventManager {
      * @Description: add the first ranked waitlist user
      */
     public int add1stRankedWaitListUser(int eventId, GatewayFacade g) {
-        Event e = g.getEventById(eventId);
-        int userId = e.getWaitList().get(0);
-        e.addUserToEvent(userId);
-        e.removeUserFromWaitList(userId);
-        g.updateEvent(e);
+        int userId = g.getFirstInWaitListOfEvent(eventId);
+        g.removeUserFromWaitList(userId, eventId);
+        g.addUserToEvent(userId, eventId);
         return userId;
     }
 
@@ -217,8 +235,7 @@ public class EventManager {
      * @return all signed up user of and event
      */
     public List<Integer> getUserList(int eventID, GatewayFacade g){
-        Event event = g.getEventById(eventID);
-        return event.getSignedUpUserList();
+        return g.getSignedUpUsersOfEvent(eventID);
     }
 
     /**
@@ -227,12 +244,51 @@ public class EventManager {
      * @return the list of ids of all events in the database
      */
     public List<Integer> getEventList(GatewayFacade g){
-        List<Integer> allEvents = new ArrayList<>();
-        List<Event> events = g.getEventList();
-        for (Event event : events){
-            allEvents.add(event.getEventId());
-        }
-        return allEvents;
+        return g.getEventIds();
+    }
+
+    /**
+     * A getter for ids of the events with a free spot the user may sign up for by VIP status, read from the
+     * precomputed eligibility of the events
+     * @param userId the user id
+     * @param g the database
+     * @return the list of ids of the open events in ascending order
+     */
+    public List<Integer> getOpenEventsFor(int userId, GatewayFacade g){
+        return g.getOpenEventIds(VipUser.class.equals(g.getUserType(userId)));
+    }
+
+    /**
+     * A getter for ids of the full events the user may wait for by VIP status, read from the precomputed eligibility
+     * of the events
+     * @param userId the user id
+     * @param g the database
+     * @return the list of ids of the full events in ascending order
+     */
+    public List<Integer> getFullEventsFor(int userId, GatewayFacade g){
+        return g.getFullEventIds(VipUser.class.equals(g.getUserType(userId)));
+    }
+
+    /**
+     * A getter for ids of the events starting within the time window, ordered by start time
+     * @param from the earliest start time, null for no bound
+     * @param to the latest start time, null for no bound
+     * @param g the database
+     * @return the list of ids of the events starting from "from" to "to" (both inclusive)
+     */
+    public List<Integer> getEventsStartingBetween(LocalDateTime from, LocalDateTime to, GatewayFacade g){
+        return g.getEventIdsStartingBetween(from, to);
+    }
+
+    /**
+     * A getter for ids of the events ending within the time window, ordered by end time
+     * @param from the earliest end time, null for no bound
+     * @param to the latest end time, null for no bound
+     * @param g the database
+     * @return the list of ids of the events ending from "from" to "to" (both inclusive)
+     */
+    public List<Integer> getEventsEndingBetween(LocalDateTime from, LocalDateTime to, GatewayFacade g){
+        return g.getEventIdsEndingBetween(from, to);
     }
 
 
@@ -244,19 +300,69 @@ public class EventManager {
      * @param eventID event id
      */
     public List<String> getInfoOfEvent(int eventID, GatewayFacade g){
-        Event event = g.getEventById(eventID);
+        return getInfoOfEvent(g.getEventSummaryById(eventID));
+    }
+
+    /**
+     * @Description: return the information of the events in the format of getInfoOfEvent. The summaries of the events
+     * are fetched in one batch.
+     * @param eventIDs event ids
+     */
+    public List<List<String>> getInfoOfEvents(List<Integer> eventIDs, GatewayFacade g){
+        List<List<String>> eventsInfo = new ArrayList<>();
+        for (EventSummary summary : g.getEventSummariesByIds(eventIDs)){
+            eventsInfo.add(getInfoOfEvent(summary));
+        }
+        return eventsInfo;
+    }
+
+    /**
+     * @Description: return the information of the events in the format of getInfoOfEvent, followed by the wait list
+     * length. The summaries of the events are fetched in one batch.
+     * @param eventIDs event ids
+     */
+    public List<List<String>> getWaitlistInfoOfEvents(List<Integer> eventIDs, GatewayFacade g){
+        List<List<String>> eventsInfo = new ArrayList<>();
+        for (EventSummary summary : g.getEventSummariesByIds(eventIDs)){
+            List<String> info = getInfoOfEvent(summary);
+            info.add(String.valueOf(summary.getWaitListCount()));
+            eventsInfo.add(info);
+        }
+        return eventsInfo;
+    }
+
+    /**
+     * @Description: return the information of the events in the format of getInfoOfEvent, followed by the string of
+     * speakers and the capacity. The summaries of the events are fetched in one batch.
+     * @param eventIDs event ids
+     */
+    public List<List<String>> getOrganizedInfoOfEvents(List<Integer> eventIDs, GatewayFacade g){
+        List<List<String>> eventsInfo = new ArrayList<>();
+        for (EventSummary summary : g.getEventSummariesByIds(eventIDs)){
+            List<String> info = getInfoOfEvent(summary);
+            info.add(getStringOfSpeakerOfEvent(summary));
+            info.add(String.valueOf(summary.getCapacity()));
+            eventsInfo.add(info);
+        }
+        return eventsInfo;
+    }
+
+    /**
+     * @Description: helper function of formatting the information of the event from its summary
+     */
+    private List<String> getInfoOfEvent(EventSummary summary){
         List<String> eventInfo = new ArrayList<String>(){
             {
-                add(event.getClass().getSimpleName());
-                add(event.getTitle());
-                add(String.valueOf(event.getEventId()));
-                add(event.getStartTime().format(formatter));
-                add(event.getEndTime().format(formatter));
-                add(event.getDuration().toMinutes() + " minute(s)");
-                add(g.getRoomById(event.getRoomId()).getRoomNum());
+                add(summary.getType());
+                add(summary.getTitle());
+                add(String.valueOf(summary.getEventId()));
+                add(summary.getStartTime().format(formatter));
+                add(summary.getEndTime().format(formatter));
+                add(summary.getDuration().toMinutes() + " minute(s)");
+                add(summary.getRoomNum());
             }
         };
-        if (event.isVipEvent()){
+        if (summary.isVipEvent()){
             eventInfo.add("VIP event");
         }
         else {
@@ -274,32 +380,29 @@ public class EventManager {
      * @param eventID event id
      */
     public String getStringOfSpeakerOfEvent(int eventID, GatewayFacade gw){
-        int type = determineEventType(eventID, gw);
-        String sSpeaker = null;
-        switch (type){
-            case 0:
-                sSpeaker = "No Speaker";
-                break;
-            case 1:
-                int speakerID = gw.getOneSpeakerEventById(eventID).getSpeakerId();
-                sSpeaker = gw.getUserById(speakerID).getUserName();
-                break;
-            case 2:
-                List<Integer> ids = gw.getMultiSpeakerEventById(eventID).getSpeakerId() != null ? gw.getMultiSpeakerEventById(eventID).getSpeakerId() : new ArrayList<>();
-                StringBuilder sbSpeakers = new StringBuilder();
-                for (int id : ids){
-                    if (gw.getUserById(id) != null) {
-                        String name = gw.getUserById(id).getUserName();
-                        sbSpeakers.append(name);
-                        if (id != ids.get(ids.size() - 1)){
-                            sbSpeakers.append(", ");
-                        }
-                    }
-                }
-                sSpeaker = sbSpeakers.toString();
-                break;
+        return getStringOfSpeakerOfEvent(gw.getEventSummaryById(eventID));
+    }
+
+    /**
+     * @Description: helper function of formatting the speakers of the event from its summary
+     */
+    private String getStringOfSpeakerOfEvent(EventSummary summary){
+        if (summary.getSpeakerNames() == null){
+            return "No Speaker";
+        }
+        return String.join(", ", summary.getSpeakerNames());
+    }
+
+    /**
+     * @Description: get the signed up users of all the events without duplicates. The events are fetched in one batch.
+     * @param eventIDs event ids
+     */
+    public Set<Integer> getUserListOfEvents(List<Integer> eventIDs, GatewayFacade g){
+        Set<Integer> users = new LinkedHashSet<>();
+        for (Event event : g.getEventsByIds(eventIDs)){
+            users.addAll(event.getSignedUpUserList());
         }
-        return sSpeaker;
+        return users;
     }
 
 
@@ -308,7 +411,7 @@ public class EventManager {
      * @param eventID event id
      */
     public int getCapacity(int eventID, GatewayFacade gw){
-        return gw.getEventById(eventID).getCapacity();
+        return gw.getEventFieldsById(eventID).getCapacity();
     }
 
     // 0: no speaker event, 1: 1speaker event, 2: multi speaker event
@@ -317,10 +420,11 @@ public class EventManager {
      * @param eventID event id
      */
     public int determineEventType(int eventID, GatewayFacade gw){
-        if (gw.getOneSpeakerEventById(eventID) != null){
+        Class<? extends Event> type = gw.getEventType(eventID);
+        if (type != null && OneSpeakerEvent.class.isAssignableFrom(type)){
             return 1;
         }
-        else if (gw.getMultiSpeakerEventById(eventID) != null){
+        else if (type != null && MultiSpeakerEvent.class.isAssignableFrom(type)){
             return 2;
         }
         else{
@@ -344,7 +448,7 @@ public class EventManager {
      * @return the boolean shows whether the event is in the database
      */
     public boolean isExistingEvent(int eventID, GatewayFacade g){
-        return g.getEventById(eventID) != null;
+        return g.getEventType(eventID) != null;
     }
 
     /**
@@ -372,7 +476,7 @@ public class EventManager {
      * @param g the database
      * @return the event duration
      */
-    public Duration getEventDuration(int eventId, GatewayFacade g) {return g.getEventById(eventId).getDuration();}
+    public Duration getEventDuration(int eventId, GatewayFacade g) {return g.getEventFieldsById(eventId).getDuration();}
 
     /**
      * Judge whether we can change the capacity of an Event
@@ -381,29 +485,21 @@ public class EventManager {
      * @return the boolean shows whether the capacity of a certain event can be changed or not
      */
     public boolean canChangeEventCapacity(int eventId,int newCapacity ,GatewayFacade g) {
-        if (newCapacity > g.getRoomById(g.getEventById(eventId).getRoomId()).getCapacity() |
-                newCapacity < g.getEventById(eventId).getSignedUpUserList().size()) {
+        if (newCapacity > g.getRoomById(g.getEventFieldsById(eventId).getRoomId()).getCapacity() |
+                newCapacity < g.countSignedUpUsersOfEvent(eventId)) {
             return false;
         }
         return true;
     }
 
     /**
-     * change the capacity of the event and add waitlist users to signed up list.
+     * change the capacity of the event and add waitlist users to signed up list. The moved users are updated as well.
      * @param eventId event id
      * @param g the database
      */
     public List<Integer> changeEventCapacity(int eventId, int newCapacity, GatewayFacade g) {
-        Event event = g.getEventById(eventId);
-        event.setCapacity(newCapacity);
-        g.updateEvent(event);
-        List<Integer> offWaitlistUsers = new ArrayList<>();
-        while (newCapacity > g.getEventById(eventId).getSignedUpUserList().size() &&
-                g.getEventById(eventId).getWaitList().size() != 0){
-            int userID = add1stRankedWaitListUser(eventId, g);
-            offWaitlistUsers.add(userID);
-        }
-        return offWaitlistUsers;
+        g.mutateEvent(eventId, event -> event.setCapacity(newCapacity));
+        return g.promoteWaitListOfEvent(eventId);
     }
 
     /**
@@ -414,9 +510,7 @@ public class EventManager {
      * @return
      */
     public void changeVipStatusOfEvent(int eventId, boolean vipStatus, GatewayFacade g){
-        Event event = g.getEventById(eventId);
-        event.setVipEvent(vipStatus);
-        g.updateEvent(event);
+        g.mutateEvent(eventId, event -> event.setVipEvent(vipStatus));
     }
 
     /**
@@ -424,8 +518,8 @@ public class EventManager {
      * @param eventId event id
      */
     public List<Integer> dropNonVipFromVipEvent(int eventId, GatewayFacade gw) {
-        List<Integer> signedUsers = gw.getEventById(eventId).getSignedUpUserList();
-        List<Integer> waitingUsers = gw.getEventById(eventId).getWaitList();
+        List<Integer> signedUsers = gw.getSignedUpUsersOfEvent(eventId);
+        List<Integer> waitingUsers = gw.getWaitListOfEvent(eventId);
         List<Integer> droppedUsers = new ArrayList<>();
         for (int userID : signedUsers){
             if(canRemoveSignedUpUser(userID, eventId, gw) && !(gw.getUserById(userID) instanceof VipUser)){
@@ -442,13 +536,14 @@ public class EventManager {
         return droppedUsers;
     }
 
+    /**
+     * Move the first ranked waitlist users into the event until it is full. The moved users are updated as well.
+     * @param eventID event id
+     * @param gw the database
+     * @return the ids of the moved users
+     */
     public List<Integer> addWaitlistUsersToEvent(int eventID, GatewayFacade gw){
-        List<Integer> movedUsers = new ArrayList<>();
-        while (gw.getEventById(eventID).getSignedUpUserList().size() < gw.getEventById(eventID).getCapacity()){
-            int userID = add1stRankedWaitListUser(eventID, gw);
-            movedUsers.add(userID);
-        }
-        return movedUsers;
+        return gw.promoteWaitListOfEvent(eventID);
     }
 
     /**
@@ -457,7 +552,7 @@ public class EventManager {
      * @return the type of event
      */
     public Boolean getVipStatusOfEvent(int eventId, GatewayFacade g){
-        return g.getEventById(eventId).isVipEvent();
+        return g.getEventFieldsById(eventId).isVipEvent();
     }
 
 
@@ -466,18 +561,18 @@ public class EventManager {
      * @Description check if a user can be added to the waitlist
      */
     public boolean canAddUserToWaitList(int eventId, int userId, GatewayFacade g) {
-        Event event = g.getEventById(eventId);
+        Event event = g.getEventFieldsById(eventId);
         if (event == null){
             return false;
         }
-        else if (event.getSignedUpUserList().size() < event.getCapacity()){
+        else if (g.countSignedUpUsersOfEvent(eventId) < event.getCapacity()){
             return false;
         }
         else{
             if (! (g.getUserById(userId) instanceof VipUser) & event.isVipEvent()){
                 return false;
             }
-            else if (event.getSignedUpUserList().contains(userId) || event.getWaitList().contains(userId)){
+            else if (g.isUserSignedUpForEvent(userId, eventId) || g.isUserInWaitListOfEvent(userId, eventId)){
                 return false;
             }
         }
@@ -487,23 +582,10 @@ public class EventManager {
 
     /**
      *
-     * @Description add users to the wait list
+     * @Description add users to the wait list, VIP users are queued before the others
      */
     public void addUserToWaitList(int eventId, int userId, GatewayFacade g) {
-        Event event = g.getEventById(eventId);
-        List<Integer> waitingUsers = event.getWaitList();
-        if (!(g.getUserById(userId) instanceof VipUser) || waitingUsers.size() == 0){
-            event.addUserToWaitList(userId);
-        }
-        else {
-            for (int i = 0; i <= event.getWaitList().size(); i++) {
-                if (!((g.getUserById(waitingUsers.get(i))) instanceof VipUser)) {
-                    event.getWaitList().add(i, userId);
-                    break;
-                }
-            }
-        }
-        g.updateEvent(event);
+        g.addUserToWaitList(userId, eventId);
     }
 
 
@@ -513,7 +595,7 @@ public class EventManager {
      */
     public boolean canRemoveWaitingUser(int eventId, int userId, GatewayFacade g) {
         if (isExistingEvent(eventId, g)) {
-            return g.getEventById(eventId).getWaitList().contains(userId);
+            return g.isUserInWaitListOfEvent(userId, eventId);
         }
         return false;
     }
@@ -524,9 +606,7 @@ public class EventManager {
      * @Description remove the waiting users
      */
     public void removeWaitingUser(int eventId, int userId, GatewayFacade g) {
-        Event event = g.getEventById(eventId);
-        event.removeUserFromWaitList(userId);
-        g.updateEvent(event);
+        g.removeUserFromWaitList(userId, eventId);
     }
 
     /**
@@ -534,11 +614,11 @@ public class EventManager {
      * @param eventID event id
      */
     public int getWaitlistLength(int eventID, GatewayFacade gw){
-        return gw.getEventById(eventID).getWaitList().size();
+        return gw.countWaitListOfEvent(eventID);
     }
 
     public List<Integer> getSignedUpUser(int eventId, GatewayFacade g) {
-        return g.getEventById(eventId).getSignedUpUserList();
+        return g.getSignedUpUsersOfEvent(eventId);
     }
 }
 
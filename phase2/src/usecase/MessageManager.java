@@ -1,7 +1,11 @@
 package usecase;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import entity.*;
@@ -13,7 +17,7 @@ public class MessageManager {
      * @Description: message all signed up users in an event
      */
     public void messageAllUsersInEvent(int eventId, int senderId, String title, String content, GatewayFacade g){
-        for (int receiverId : g.getEventById(eventId).getSignedUpUserList()){
+        for (int receiverId : g.getSignedUpUsersOfEvent(eventId)){
             Message m = new Message(title, content, senderId, receiverId);
             g.addMessage(m);
         }
@@ -25,8 +29,10 @@ public class MessageManager {
     public void messageAllUsersInAllSpeakingEvents(int speakerID, String title, String content, GatewayFacade g){
         Speaker speaker = g.getSpeakerById(speakerID);
         List<Integer> speakingEvents = speaker.get_GivingEventList();
-        for (int eventID : speakingEvents){
-            messageAllUsersInEvent(eventID, speakerID, title, content, g);
+        for (Event event : g.getEventsByIds(speakingEvents)){
+            for (int receiverId : event.getSignedUpUserList()){
+                messageOneUser(speakerID, receiverId, title, content, g);
+            }
         }
     }
 
@@ -34,14 +40,14 @@ public class MessageManager {
      * @Description: judge whether receiver whose Id is receiverID participate Event which id is eventId
      */
     public boolean canMessageAttendeeOfSpeakingEvent(int eventId, int receiverId, GatewayFacade g){
-        return g.getEventById(eventId).getSignedUpUserList().contains(receiverId);
+        return g.isUserSignedUpForEvent(receiverId, eventId);
     }
 
     public List<Integer> allMessageableAttendee(int userId, GatewayFacade g){
         List<Integer> eventListId = g.getAttendeeById(userId).getSignedUpEventList();
         List<Integer> canMessageableList = new ArrayList<>();
-        for (int eventId: eventListId) {
-            canMessageableList.addAll(g.getEventById(eventId).getSignedUpUserList());
+        for (Event event : g.getEventsByIds(eventListId)) {
+            canMessageableList.addAll(event.getSignedUpUserList());
         }
         List<Integer> listWithoutDuplicates = canMessageableList.stream().distinct().collect(Collectors.toList());
         listWithoutDuplicates.remove(userId);
@@ -87,27 +93,20 @@ public class MessageManager {
 
 
     /**
-     * @Description: message all Speaker
+     * @Description: message all Speaker, picked by the user types and sent in batches as they are scanned
      */
     public void messageAllSpeakers(String title, String content, int senderId, GatewayFacade g) {
-        List<User> users = g.getUserList();
-        for (User user : users){
-            if (user instanceof Speaker){
-                messageOneUser(senderId, user.getUserId(), title, content, g);
-            }
-        }
+        g.addMessages(g.streamUserIdsOfType(Speaker.class::isAssignableFrom)
+                .map(receiverId -> new Message(title, content, senderId, receiverId)));
     }
 
     /**
-     * @Description: message all Attendee
+     * @Description: message all Attendee, picked by the user types and sent in batches as they are scanned
      */
     public void messageAllAttendees(int senderId, String title, String content, GatewayFacade g){
-        List<User> users = g.getUserList();
-        for (User user : users){
-            if (user instanceof Attendee & !(user instanceof Organizer)){
-                messageOneUser(senderId, user.getUserId(), title, content, g);
-            }
-        }
+        g.addMessages(g.streamUserIdsOfType(type -> Attendee.class.isAssignableFrom(type)
+                        && !Organizer.class.isAssignableFrom(type))
+                .map(receiverId -> new Message(title, content, senderId, receiverId)));
     }
 
     /**
@@ -136,11 +135,16 @@ public class MessageManager {
      */
     public List<List<String>> getReceivedMessageListByUserId(int userID, GatewayFacade g){
         List<Message> messages = g.getReceivedMessageListByUserId(userID);
+        Set<Integer> senderIds = new LinkedHashSet<>();
+        for (Message message : messages){
+            senderIds.add(message.getSenderId());
+        }
+        Map<Integer, String> names = getUserNames(senderIds, g);
         List<List<String>> allMessageInfo = new ArrayList<>();
         for (Message message : messages){
             List<String> messageInfo = new ArrayList<String>(){
                 {
-                    add(String.valueOf(g.getUserById(message.getSenderId()).getUserName()));
+                    add(String.valueOf(names.get(message.getSenderId())));
                     add(message.getTitle());
                     add(message.getInfo());
                 }
@@ -156,11 +160,16 @@ public class MessageManager {
      */
     public List<List<String>> getSentMessageListByUserId(int userID, GatewayFacade g) {
         List<Message> messages = g.getSentMessageListByUserId(userID);
+        Set<Integer> receiverIds = new LinkedHashSet<>();
+        for (Message message : messages){
+            receiverIds.add(message.getReceiverId());
+        }
+        Map<Integer, String> names = getUserNames(receiverIds, g);
         List<List<String>> allMessageInfo = new ArrayList<>();
         for (Message message : messages){
             List<String> messageInfo = new ArrayList<String>(){
                 {
-                    add(String.valueOf(g.getUserById(message.getReceiverId()).getUserName()));
+                    add(String.valueOf(names.get(message.getReceiverId())));
                     add(message.getTitle());
                     add(message.getInfo());
                 }
@@ -171,6 +180,21 @@ public class MessageManager {
     }
 
 
+    /**
+     * Get the user names of the users, fetched in one batch
+     * @param userIds user ids
+     * @return map from user id to user name
+     */
+    private Map<Integer, String> getUserNames(Set<Integer> userIds, GatewayFacade g){
+        Map<Integer, String> names = new HashMap<>();
+        for (User user : g.getUsersByIds(userIds)){
+            if (user != null){
+                names.put(user.getUserId(), user.getUserName());
+            }
+        }
+        return names;
+    }
+
     /**
      * @Description: judge whether a User whose id is currentuserID is eligible to reply a message which id is
      * positionOfMessage
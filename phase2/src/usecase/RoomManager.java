@@ -27,12 +27,7 @@ public class RoomManager {
      * @return the boolean shows that whether a room can be added to the database
      */
     public boolean canAddRoom(String room_num, GatewayFacade g) {
-        for (Room r : g.getRoomList()) {
-            if (r.getRoomNum().equals(room_num)) {
-                return false;
-            }
-        }
-        return true;
+        return !g.isExistingRoomNum(room_num);
     }
 
     /**
@@ -54,7 +49,7 @@ public class RoomManager {
      * @return the room id
      */
     public int getRoomIDbyRoomNumber(String roomNumber, GatewayFacade g){
-        return g.getRoomByRoomNum(roomNumber).getRid();
+        return g.getRoomIdByRoomNum(roomNumber);
     }
 
 
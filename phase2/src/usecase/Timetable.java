@@ -0,0 +1,72 @@
+package usecase;
+
+import entity.event.Event;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A compact timetable of the events a user has signed up for, built from one batched fetch. The start and end times
+ * are kept sorted by start, so whether a new event conflicts with any of them is found by a binary search in memory.
+ */
+public class Timetable {
+
+    /** The start times in ascending order, in seconds */
+    private final long[] starts;
+    /** latestEnds[i] is the latest end time of the events from 0 to i (by start), in seconds */
+    private final long[] latestEnds;
+
+    /**
+     * Build the timetable of the given events
+     * @param events the events, null ones (e.g. deleted) are skipped
+     */
+    public Timetable(List<Event> events) {
+        List<Event> sorted = new ArrayList<>();
+        for (Event event : events) {
+            if (event != null) {
+                sorted.add(event);
+            }
+        }
+        sorted.sort(Comparator.comparing(Event::getStartTime));
+        starts = new long[sorted.size()];
+        latestEnds = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            starts[i] = secondsOf(sorted.get(i).getStartTime());
+            latestEnds[i] = Math.max(secondsOf(sorted.get(i).getEndTime()), i > 0 ? latestEnds[i - 1] : Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * @Description: judge whether an event in the timetable overlaps the time window, i.e. starts before its end and
+     * ends after its start. Among the events starting before the end, the latest end decides.
+     * @param start the start of the time window
+     * @param end the end of the time window
+     * @return true if there is a conflict
+     */
+    public boolean conflicts(LocalDateTime start, LocalDateTime end) {
+        int startingBefore = countStartingBefore(secondsOf(end));
+        return startingBefore > 0 && latestEnds[startingBefore - 1] > secondsOf(start);
+    }
+
+    /** Helper Func, the number of events starting before the time, by binary search */
+    private int countStartingBefore(long time) {
+        int low = 0, high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Helper Func, the time in seconds */
+    private static long secondsOf(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -70,7 +70,7 @@ public class UserManager {
      */
     public boolean canAddEventToSpeaker(int eventID, int speakerId, GatewayFacade g){
         Speaker s = g.getSpeakerById(speakerId);
-        Event event = g.getEventById(eventID);
+        Event event = g.getEventFieldsById(eventID);
         if (s == null || event == null || event instanceof NonSpeakerEvent) {
             return false;
         }
@@ -82,13 +82,12 @@ public class UserManager {
      * @Description: add a Event to a Speaker
      */
     public void addEventToSpeaker(int eventId, int speakerId, GatewayFacade g){
-        Event event = g.getEventById(eventId);
+        Event event = g.getEventFieldsById(eventId);
         if (event instanceof OneSpeakerEvent){
             removeOneSpeakerEventFromSpeaker(eventId, g);
         }
-        Speaker speaker = g.getSpeakerById(speakerId);
-        speaker.addGivingEvent(eventId);
-        g.updateUser(speaker);
+        g.mutateUser(speakerId, user -> ((Speaker) user).addGivingEvent(eventId));
+        g.addEventToSpeakerSchedule(speakerId, eventId);
     }
 
 
@@ -97,9 +96,8 @@ public class UserManager {
      */
     private void removeOneSpeakerEventFromSpeaker(int eventId, GatewayFacade g) {
         OneSpeakerEvent e =  g.getOneSpeakerEventById(eventId);
-        Speaker speaker = g.getSpeakerById(e.getSpeakerId());
-        speaker.removeGivingEvent(eventId);
-        g.updateUser(speaker);
+        g.mutateUser(e.getSpeakerId(), user -> ((Speaker) user).removeGivingEvent(eventId));
+        g.removeEventFromSpeakerSchedule(e.getSpeakerId(), eventId);
     }
 
 
@@ -107,48 +105,94 @@ public class UserManager {
      * @Description: judge whether a User is eligible to sign up an Event
      */
     public boolean canSignUpForEvent(int eventId, int userId, GatewayFacade g) {
-        Event e = g.getEventById(eventId);
-        if (!(e == null || isExistingSpeaker(userId, g)
-                || (!(g.getUserById(userId) instanceof VipUser) & e.isVipEvent()))) {
-            Attendee a = (Attendee) g.getUserById(userId);
+        User user = g.getUserById(userId);
+        return canSignUpForEvent(g.getEventFieldsById(eventId), user, getTimetable(user, g));
+    }
 
-            for (int i = 0; i < a.getSignedUpEventList().size(); i++) {
-                if (g.getEventById(a.getSignedUpEventList().get(i)).getStartTime().isBefore(e.getEndTime())
-                        & g.getEventById(a.getSignedUpEventList().get(i)).getEndTime().isAfter(e.getStartTime())) {
-                    return false;
-                }
+    /**
+     * @Description: judge whether a User is eligible to sign up an Event, in memory against the timetable of the user
+     */
+    public boolean canSignUpForEvent(Event e, User user, Timetable timetable) {
+        if (e == null || user == null || Speaker.class.equals(user.getClass())
+                || (!(user instanceof VipUser) & e.isVipEvent())) {
+            return false;
+        }
+        return !timetable.conflicts(e.getStartTime(), e.getEndTime());
+    }
+
+    /**
+     * @Description: get the ids of the given events a User is eligible to sign up and has not signed up for, see
+     * canSignUpForEvent. The user, the timetable and the events are fetched once each.
+     */
+    public List<Integer> getEventsCanSignUpFor(int userId, List<Integer> eventIds, GatewayFacade g) {
+        return getEventsCanJoin(userId, eventIds, false, g);
+    }
+
+    /**
+     * @Description: get the ids of the given events a User is eligible to sign up and has neither signed up for nor
+     * waited for, see getEventsCanSignUpFor
+     */
+    public List<Integer> getEventsCanWaitListFor(int userId, List<Integer> eventIds, GatewayFacade g) {
+        return getEventsCanJoin(userId, eventIds, true, g);
+    }
+
+    /** Helper Func, filter the events in memory by the user and the timetable of the user */
+    private List<Integer> getEventsCanJoin(int userId, List<Integer> eventIds, boolean waiting, GatewayFacade g) {
+        User user = g.getUserById(userId);
+        List<Integer> eventIdsCanJoin = new ArrayList<>();
+        if (!(user instanceof Attendee) || eventIds.isEmpty()) {
+            return eventIdsCanJoin;
+        }
+        Attendee attendee = (Attendee) user;
+        Timetable timetable = getTimetable(user, g);
+        for (Event e : g.getEventFieldsByIds(eventIds)) {
+            if (e != null && !attendee.getSignedUpEventList().contains(e.getEventId())
+                    && !(waiting && attendee.getMyWaitList().contains(e.getEventId()))
+                    && canSignUpForEvent(e, user, timetable)) {
+                eventIdsCanJoin.add(e.getEventId());
             }
-            return true;
         }
-        return false;
+        return eventIdsCanJoin;
+    }
+
+    /**
+     * @Description: get the timetable of the events a User has signed up for, fetched in one batch
+     */
+    public Timetable getTimetable(int userId, GatewayFacade g) {
+        return getTimetable(g.getUserById(userId), g);
+    }
+
+    /** Helper Func, the timetable of the user, empty if the user can not sign up for events */
+    private Timetable getTimetable(User user, GatewayFacade g) {
+        if (!(user instanceof Attendee)) {
+            return new Timetable(new ArrayList<>());
+        }
+        return new Timetable(g.getEventFieldsByIds(((Attendee) user).getSignedUpEventList()));
     }
 
     /**
      * @Description: add an Event to Attendee or Organizer
      */
     public void addEventToUser(int eventId, int userId, GatewayFacade g){
-        Attendee attendee = (Attendee) g.getUserById(userId);
-        attendee.signUpEvent(eventId);
-        g.updateUser(attendee);
+        g.mutateUser(userId, user -> ((Attendee) user).signUpEvent(eventId));
     }
 
     /**
      * @Description: cancel an Event for Attendee or Organizer
      */
     public void cancelEventFromUser(int eventId, int userId, GatewayFacade g) {
-        Attendee attendee = (Attendee) g.getUserById(userId);
-        attendee.cancelEvent(eventId);
-        g.updateUser(attendee);
+        g.mutateUser(userId, user -> ((Attendee) user).cancelEvent(eventId));
     }
 
     /**
      * @Description: transfer the Waiting Event To SignedUp
      */
     public void transferWaitingEventToSignedUp(int eventId, int userId, GatewayFacade g) {
-        Attendee attendee = (Attendee) g.getUserById(userId);
-        attendee.signUpEvent(eventId);
-        attendee.removeWaitingEvent(eventId);
-        g.updateUser(attendee);
+        g.mutateUser(userId, user -> {
+            Attendee attendee = (Attendee) user;
+            attendee.signUpEvent(eventId);
+            attendee.removeWaitingEvent(eventId);
+        });
     }
 
     // used by ems.changeEventCapacity & ems.changeVIPStatusOfEvent
@@ -162,18 +206,14 @@ public class UserManager {
      * @Description: add the event to the wait list
      */
     public void addEventToMyWaitList(int eventId, int userId, GatewayFacade g) {
-        Attendee attendee = (Attendee) g.getUserById(userId);
-        attendee.addWaitingEvent(eventId);
-        g.updateUser(attendee);
+        g.mutateUser(userId, user -> ((Attendee) user).addWaitingEvent(eventId));
     }
 
     /**
      * @Description: cancel event from the waitlist
      */
     public void cancelEventFromMyWaitList(int eventId, int userId, GatewayFacade g) {
-        Attendee attendee = (Attendee) g.getUserById(userId);
-        attendee.removeWaitingEvent(eventId);
-        g.updateUser(attendee);
+        g.mutateUser(userId, user -> ((Attendee) user).removeWaitingEvent(eventId));
     }
 
     /**
@@ -183,18 +223,14 @@ public class UserManager {
      * @param g Database
      */
     public void addEventToOrganizedList(int eventID, int organizerID, GatewayFacade g){
-        Organizer organizer = g.getOrganizerById(organizerID);
-        organizer.AddCreatedEvent(eventID);
-        g.updateUser(organizer);
+        g.mutateUser(organizerID, user -> ((Organizer) user).AddCreatedEvent(eventID));
     }
 
     /**
      * @Description: set password for an User
      */
     public void setPassword(int userId,String password, GatewayFacade g) {
-        User user = g.getUserById(userId);
-        user.setPassword(password);
-        g.updateUser(user);
+        g.mutateUser(userId, user -> user.setPassword(password));
     }
 
     /**
@@ -267,10 +303,17 @@ public class UserManager {
      * @Description: judge the User category, 0 means speaker, 1 means organizer, 2 means attendee/VIP
      */
     public int getUserCategory(int id, GatewayFacade g){
-        if (isExistingSpeaker(id, g)){
+        return categoryOf(g.getUserType(id));
+    }
+
+    /**
+     * @Description: the category of the given class of user, see getUserCategory
+     */
+    private int categoryOf(Class<? extends User> type){
+        if (Speaker.class.equals(type)){
             return 0;
         }
-        else if (isExistingOrganizer(id, g)){
+        else if (Organizer.class.equals(type)){
             return 1;
         }
         else{
@@ -282,15 +325,7 @@ public class UserManager {
      * @Description: get needed user category list. speaker = 0, organizer = 1, attendee = 2
      */
     public List<Integer> getListOfUsers(int userType, GatewayFacade g){
-        List<User> users = g.getUserList();
-        List<Integer> neededUsers = new ArrayList<>();
-        for (User user : users){
-            int userID = user.getUserId();
-            if (getUserCategory(userID, g) == userType){
-                neededUsers.add(userID);
-            }
-        }
-        return neededUsers;
+        return g.getUserIdsOfType(type -> categoryOf(type) == userType);
     }
 
 
@@ -298,7 +333,7 @@ public class UserManager {
      * @return the rank of the user from the wait list
      */
     public int getUserRankInWaitList(int userId, int eventId, GatewayFacade g) {
-        return g.getEventById(eventId).getWaitList().indexOf(userId) + 1;
+        return g.getRankInWaitListOfEvent(userId, eventId);
     }
 
 
@@ -317,22 +352,45 @@ public class UserManager {
 
 
     /**
-     * @Description: judge whether a speaker is speaking
+     * @Description: get User name and id of all the users, in the format of getUserInfo. The users are fetched in one
+     * batch.
      */
-    public boolean isSpeakerBusy(int speakerId, LocalDateTime start, LocalDateTime end, GatewayFacade g) {
-        for (int eid :g.getSpeakerById(speakerId).get_GivingEventList()) {
-            if ((g.getEventById(eid).getStartTime().isBefore(end) & !(g.getEventById(eid).getEndTime().isBefore(start) |
-                    g.getEventById(eid).getEndTime().equals(start)))) {
-                return true;
-            }
+    public List<List<String>> getUserInfos(List<Integer> userIDs, GatewayFacade g){
+        List<List<String>> usersInfo = new ArrayList<>();
+        for (User user : g.getUsersByIds(userIDs)){
+            usersInfo.add(new ArrayList<String>(){
+                {
+                    add(String.valueOf(user.getUserId()));
+                    add(user.getUserName());
+                }
+            });
         }
-        return false;
+        return usersInfo;
+    }
+
+    /**
+     * @return the rank of the user from the wait list of each event, by one rank lookup per event
+     */
+    public List<Integer> getUserRanksInWaitLists(int userId, List<Integer> eventIds, GatewayFacade g) {
+        List<Integer> ranks = new ArrayList<>();
+        for (int eventId : eventIds) {
+            ranks.add(g.getRankInWaitListOfEvent(userId, eventId));
+        }
+        return ranks;
+    }
+
+
+    /**
+     * @Description: judge whether a speaker is speaking, by one lookup in the schedule of the speaker
+     */
+    public boolean isSpeakerBusy(int speakerId, LocalDateTime start, LocalDateTime end, GatewayFacade g) {
+        return g.isSpeakerBusy(speakerId, start, end);
     }
 
 
     /**
      *
-     * @Description check if a speaker is busy or not.
+     * @Description check if a speaker is busy or not, by one lookup per speaker.
      */
     public boolean isSpeakerBusy(ArrayList<Integer> speakerId, LocalDateTime start, LocalDateTime end, GatewayFacade g) {
         for (int sid : speakerId) {
@@ -348,7 +406,7 @@ public class UserManager {
      * @Description: judge a speaker is exist
      */
     public boolean isExistingSpeaker(int userID, GatewayFacade g){
-        return g.getSpeakerById(userID) != null;
+        return Speaker.class.equals(g.getUserType(userID));
     }
 
 
@@ -358,7 +416,7 @@ public class UserManager {
      */
     public boolean isExistingSpeaker(List<Integer> speakerList, GatewayFacade g) {
         for (int i : speakerList) {
-            if (g.getSpeakerById(i) == null) {
+            if (!isExistingSpeaker(i, g)) {
                 return false;
             }
         }
@@ -370,7 +428,7 @@ public class UserManager {
      * @Description: judge a User is exist
      */
     public boolean isExistingUser(String username, GatewayFacade g){
-        return g.getUserByUserName(username) != null;
+        return g.isExistingUserName(username);
     }
 
     public boolean isExistingUser(int userID, GatewayFacade gw){
@@ -382,7 +440,8 @@ public class UserManager {
      * @Description: judge an Attendee is exist
      */
     public boolean isExistingAttendee(int userId, GatewayFacade g){
-        return g.getAttendeeById(userId) != null;
+        Class<? extends User> type = g.getUserType(userId);
+        return Attendee.class.equals(type) || VipUser.class.equals(type);
     }
 
 
@@ -390,7 +449,7 @@ public class UserManager {
      * @Description: judge an organizer is exist
      */
     public boolean isExistingOrganizer(int userId, GatewayFacade g){
-        return g.getOrganizerById(userId) != null;
+        return Organizer.class.equals(g.getUserType(userId));
     }
 
     /**
@@ -420,9 +479,8 @@ public class UserManager {
             cancelEventFromWaitingUsers(eventID, event, gw);
             List<Integer> speakerList = event.getSpeakerList();
             for (Integer speakerID : speakerList){
-                Speaker speaker = gw.getSpeakerById(speakerID);
-                speaker.removeGivingEvent(eventID);
-                gw.updateUser(speaker);
+                gw.mutateUser(speakerID, user -> ((Speaker) user).removeGivingEvent(eventID));
+                gw.removeEventFromSpeakerSchedule(speakerID, eventID);
             }
         }
         else if(gw.getOneSpeakerEventById(eventID) != null){
@@ -486,8 +544,6 @@ public class UserManager {
     }
 
     private void cancelEventFromOrganized(int eventID, int organizerID, GatewayFacade gw){
-        Organizer organizer = gw.getOrganizerById(organizerID);
-        organizer.cancelCreatedEvent(eventID);
-        gw.updateUser(organizer);
+        gw.mutateUser(organizerID, user -> ((Organizer) user).cancelCreatedEvent(eventID));
     }
 }
\ No newline at end of file